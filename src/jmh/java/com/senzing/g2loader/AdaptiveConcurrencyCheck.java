@@ -0,0 +1,71 @@
+package com.senzing.g2loader;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads into a stub engine that adds a fixed number of records at a time, with
+ * the loader and limiter -adaptive sets up, and checks that the limit settles
+ * near the capacity of the engine and stays there instead of growing up to the
+ * number of threads while the calls queue in the engine.
+ * <p>
+ * Run with the classes of the benchmark profile, optionally with the seconds to
+ * load for, the capacity of the engine, its latency in microseconds and the
+ * number of threads, e.g.
+ * {@code java -cp target/benchmarks.jar com.senzing.g2loader.AdaptiveConcurrencyCheck 90 4 1000 64}.
+ */
+public class AdaptiveConcurrencyCheck {
+
+	private static final int REPORT_SECONDS = 5;
+	// Windows taken to find the limit before it is checked
+	private static final int WARMUP_SECONDS = 10;
+
+	public static void main(String[] args) throws Exception {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 90;
+		int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		long latencyMicros = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+		LongAdder added = new LongAdder();
+		G2LoaderHandler handler = new G2LoaderHandler(StubG2Engine.create(latencyMicros, added, capacity));
+		RecordLoader loader = new RecordLoader(handler, threads);
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(
+				Math.min(threads, Runtime.getRuntime().availableProcessors()), threads);
+		loader.setLimiter(limiter);
+
+		int[] highest = new int[1];
+		int[] lowestSettled = { Integer.MAX_VALUE };
+		long start = System.nanoTime();
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+		reporter.scheduleAtFixedRate(() -> {
+			long elapsed = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+			int settled = limiter.getSettledLimit();
+			System.out.println(elapsed + "s: limit " + limiter.getLimit() + ", settled " + settled + ", "
+					+ added.sumThenReset() / REPORT_SECONDS + " records/s");
+			if (elapsed >= WARMUP_SECONDS) {
+				highest[0] = Math.max(highest[0], settled);
+				lowestSettled[0] = Math.min(lowestSettled[0], settled);
+			}
+		}, REPORT_SECONDS, REPORT_SECONDS, TimeUnit.SECONDS);
+
+		loader.start();
+		long end = start + TimeUnit.SECONDS.toNanos(seconds);
+		long line = 0;
+		while (System.nanoTime() < end) {
+			line++;
+			loader.submit(line, line, BenchmarkData.jsonRecord((int) line, BenchmarkData.NARROW));
+		}
+		loader.finish();
+		reporter.shutdown();
+		reporter.awaitTermination(REPORT_SECONDS, TimeUnit.SECONDS);
+
+		// Probing past the capacity keeps the limit somewhat above it
+		boolean passed = highest[0] <= 2 * capacity && lowestSettled[0] >= Math.max(1, capacity / 2);
+		System.out.println((passed ? "passed" : "FAILED") + ": settled between " + lowestSettled[0] + " and "
+				+ highest[0] + " engine calls in flight with an engine adding " + capacity + " at a time, "
+				+ threads + " threads");
+		System.exit(passed ? 0 : 1);
+	}
+}
@@ -0,0 +1,129 @@
+package com.senzing.g2loader;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates synthetic data files for the benchmarks. Narrow records have a
+ * handful of attributes like a typical person record, wide records have a few
+ * hundred.
+ */
+final class BenchmarkData {
+
+	static final int NARROW = 5;
+	static final int WIDE = 200;
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Writes a JSON lines file.
+	 *
+	 * @param file       File to write
+	 * @param records    Number of records
+	 * @param attributes Number of attributes besides the keys
+	 *
+	 * @throws IOException
+	 */
+	static void writeJsonLines(Path file, int records, int attributes) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (int i = 0; i < records; i++) {
+				writer.write(jsonRecord(i, attributes));
+				writer.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * Writes a CSV file with a header line.
+	 *
+	 * @param file       File to write
+	 * @param records    Number of records
+	 * @param attributes Number of columns besides the keys
+	 *
+	 * @throws IOException
+	 */
+	static void writeCsv(Path file, int records, int attributes) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write(csvHeader(attributes));
+			writer.write("\r\n");
+			for (int i = 0; i < records; i++) {
+				writer.write(csvRecord(i, attributes));
+				writer.write("\r\n");
+			}
+		}
+	}
+
+	/**
+	 * @return JSON record with the given number
+	 */
+	static String jsonRecord(int number, int attributes) {
+		StringBuilder record = new StringBuilder(64 + attributes * 40);
+		record.append("{\"DATA_SOURCE\":\"TEST\",\"RECORD_ID\":\"").append(number).append('"');
+		for (int i = 0; i < attributes; i++) {
+			record.append(",\"").append(attributeName(i)).append("\":\"").append(attributeValue(number, i))
+					.append('"');
+		}
+		return record.append('}').toString();
+	}
+
+	static String csvHeader(int attributes) {
+		StringBuilder header = new StringBuilder("DATA_SOURCE,RECORD_ID");
+		for (int i = 0; i < attributes; i++) {
+			header.append(',').append(attributeName(i));
+		}
+		return header.toString();
+	}
+
+	static String csvRecord(int number, int attributes) {
+		StringBuilder record = new StringBuilder(32 + attributes * 24);
+		record.append("TEST,").append(number);
+		for (int i = 0; i < attributes; i++) {
+			// Every fourth value needs quoting
+			String value = attributeValue(number, i);
+			if (i % 4 == 3) {
+				record.append(",\"").append(value).append(", Apt ").append(i).append('"');
+			} else {
+				record.append(',').append(value);
+			}
+		}
+		return record.toString();
+	}
+
+	private static String attributeName(int attribute) {
+		switch (attribute) {
+		case 0:
+			return "NAME_FULL";
+		case 1:
+			return "ADDR_FULL";
+		case 2:
+			return "PHONE_NUMBER";
+		case 3:
+			return "EMAIL_ADDRESS";
+		case 4:
+			return "DATE_OF_BIRTH";
+		default:
+			return "ATTRIBUTE_" + attribute;
+		}
+	}
+
+	private static String attributeValue(int number, int attribute) {
+		switch (attribute) {
+		case 0:
+			return "Jöhn Smith " + number;
+		case 1:
+			return number + " Main Street Las Vegas NV 89101";
+		case 2:
+			return "702-555-" + (number % 10000);
+		case 3:
+			return "john.smith" + number + "@example.com";
+		case 4:
+			return (1940 + number % 60) + "-0" + (1 + number % 9) + "-1" + (number % 10);
+		default:
+			return "value " + attribute + " of " + number;
+		}
+	}
+}
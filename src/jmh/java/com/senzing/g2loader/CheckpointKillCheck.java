@@ -0,0 +1,162 @@
+package com.senzing.g2loader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+/**
+ * Kills loads with checkpoints against a stub engine and resumes them, then
+ * checks that no record was lost and that the only records added twice are the
+ * ones loaded past the saved checkpoint. A load is killed halfway through and
+ * another one before it saved a checkpoint.
+ * <p>
+ * Run with the classes of the benchmark profile, optionally with the number of
+ * records and the simulated engine latency in microseconds, e.g.
+ * {@code java -cp target/benchmarks.jar com.senzing.g2loader.CheckpointKillCheck 200000 100}.
+ */
+public class CheckpointKillCheck {
+
+	private static final int THREADS = 8;
+	private static final int SAVE_RECORDS = 1000;
+
+	private final Path directory;
+	private final Path dataFile;
+	private final Path iniFile;
+	private final Path checkpointFile;
+	private final Path addedFile;
+	private final int records;
+	private final long latencyMicros;
+
+	private CheckpointKillCheck(Path directory, int records, long latencyMicros) {
+		this.directory = directory;
+		this.dataFile = directory.resolve("records.jsonl");
+		this.iniFile = directory.resolve("G2Module.ini");
+		this.checkpointFile = directory.resolve("records.checkpoint");
+		this.addedFile = directory.resolve("added.txt");
+		this.records = records;
+		this.latencyMicros = latencyMicros;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+		long latencyMicros = args.length > 1 ? Long.parseLong(args[1]) : 100;
+		Path directory = Files.createTempDirectory("g2loader-checkpoint-check");
+		CheckpointKillCheck check = new CheckpointKillCheck(directory, records, latencyMicros);
+		boolean passed;
+		try {
+			BenchmarkData.writeJsonLines(check.dataFile, records, BenchmarkData.NARROW);
+			Files.createFile(check.iniFile);
+			passed = check.run("killed halfway", records / 2, 10, SAVE_RECORDS);
+			passed &= check.run("killed before the first save", records / 10, 3600, Integer.MAX_VALUE);
+		} finally {
+			try (Stream<Path> files = Files.list(directory)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.deleteIfExists(file);
+				}
+			}
+			Files.deleteIfExists(directory);
+		}
+		System.exit(passed ? 0 : 1);
+	}
+
+	/**
+	 * Loads the file, kills the load once enough records were added and resumes
+	 * it.
+	 *
+	 * @return Whether no record was lost or added twice before the checkpoint
+	 */
+	private boolean run(String name, int killAfter, int saveSeconds, int saveRecords) throws Exception {
+		Files.deleteIfExists(checkpointFile);
+		Files.deleteIfExists(addedFile);
+		Files.createFile(addedFile);
+		List<String> options = List.of("-checkpointInterval", Integer.toString(saveSeconds), "-checkpointRecords",
+				Integer.toString(saveRecords));
+
+		Process load = startLoad(options);
+		while (countLines(addedFile) < killAfter) {
+			if (load.waitFor(10, TimeUnit.MILLISECONDS)) {
+				throw new IllegalStateException("The load ended before it was killed, with " + load.exitValue());
+			}
+		}
+		load.destroyForcibly().waitFor();
+		long checkpointLine = readCheckpointLine();
+
+		List<String> resumeOptions = new ArrayList<>(options);
+		resumeOptions.add("-resume");
+		int exitCode = startLoad(resumeOptions).waitFor();
+		if (exitCode != 0) {
+			System.out.println(name + ": FAILED, the resumed load exited with " + exitCode);
+			return false;
+		}
+
+		// Record i is on line i + 1
+		int[] added = new int[records];
+		for (String line : Files.readAllLines(addedFile, StandardCharsets.UTF_8)) {
+			added[Integer.parseInt(line)]++;
+		}
+		long lost = 0;
+		long duplicated = 0;
+		long duplicatedBeforeCheckpoint = 0;
+		for (int i = 0; i < records; i++) {
+			if (added[i] == 0) {
+				lost++;
+			} else if (added[i] > 1) {
+				duplicated += added[i] - 1;
+				if (i + 1 <= checkpointLine) {
+					duplicatedBeforeCheckpoint++;
+				}
+			}
+		}
+		boolean passed = lost == 0 && duplicatedBeforeCheckpoint == 0;
+		System.out.println(name + ": " + (passed ? "passed" : "FAILED") + ", checkpoint "
+				+ (checkpointLine < 0 ? "not saved" : "at line " + checkpointLine) + ", " + lost + " records lost, "
+				+ duplicated + " added again past the checkpoint, " + duplicatedBeforeCheckpoint
+				+ " added again before it");
+		return passed;
+	}
+
+	private Process startLoad(List<String> options) throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-D" + WorkerPool.HANDLER_PROPERTY + "=" + RecordingHandler.class.getName());
+		command.add("-D" + RecordingHandler.ADDED_PROPERTY + "=" + addedFile);
+		command.add("-D" + RecordingHandler.LATENCY_PROPERTY + "=" + latencyMicros);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(G2Loader.class.getName());
+		command.addAll(List.of("-iniFile", iniFile.toString(), "-dataFile", dataFile.toString(), "-threads",
+				Integer.toString(THREADS), "-checkpointFile", checkpointFile.toString()));
+		command.addAll(options);
+		return new ProcessBuilder(command).directory(directory.toFile()).inheritIO().start();
+	}
+
+	private long readCheckpointLine() throws IOException {
+		if (!Files.exists(checkpointFile)) {
+			return -1;
+		}
+		try (JsonReader reader = Json.createReader(Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8))) {
+			JsonObject checkpoint = reader.readObject();
+			return checkpoint.getJsonNumber("line").longValue();
+		}
+	}
+
+	private static long countLines(Path file) throws IOException {
+		long lines = 0;
+		for (byte b : Files.readAllBytes(file)) {
+			if (b == '\n') {
+				lines++;
+			}
+		}
+		return lines;
+	}
+}
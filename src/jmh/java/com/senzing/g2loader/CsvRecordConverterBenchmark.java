@@ -0,0 +1,87 @@
+package com.senzing.g2loader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares turning parsed CSV rows into JSON through a JsonObjectBuilder, as
+ * CSVtoJson did, with the {@link CsvRecordConverter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvRecordConverterBenchmark {
+
+	private static final int ROWS = 1000;
+
+	/**
+	 * Number of columns besides the keys.
+	 */
+	@Param({ "5", "200" })
+	public int attributes;
+
+	private List<String> headers;
+	private List<CSVRecord> rows;
+	private CsvRecordConverter converter;
+
+	@Setup
+	public void setUp() throws IOException {
+		StringBuilder csv = new StringBuilder(BenchmarkData.csvHeader(attributes)).append("\r\n");
+		for (int i = 0; i < ROWS; i++) {
+			csv.append(BenchmarkData.csvRecord(i, attributes)).append("\r\n");
+		}
+		try (CSVParser parser = new CSVParser(new StringReader(csv.toString()), CSVFormat.EXCEL.withHeader())) {
+			headers = parser.getHeaderNames();
+			rows = new ArrayList<>(parser.getRecords());
+		}
+		converter = new CsvRecordConverter(headers);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void objectBuilder(Blackhole blackhole) {
+		for (CSVRecord row : rows) {
+			JsonObjectBuilder jsonRec = Json.createObjectBuilder();
+			int i = 0;
+			for (String key : headers) {
+				jsonRec.add(key, row.get(i));
+				i++;
+			}
+			blackhole.consume(jsonRec.build().toString());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void converter(Blackhole blackhole) {
+		for (CSVRecord row : rows) {
+			blackhole.consume(converter.toJson(row));
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.senzing.g2loader;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares reading every line of a JSON lines file through a BufferedReader
+ * with the {@link MappedLineReader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LineReaderBenchmark {
+
+	/**
+	 * Number of records in the file.
+	 */
+	@Param({ "200000" })
+	public int records;
+
+	/**
+	 * Number of attributes besides the keys.
+	 */
+	@Param({ "5", "200" })
+	public int attributes;
+
+	private Path file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		file = Files.createTempFile("g2loader-bench", ".jsonl");
+		BenchmarkData.writeJsonLines(file, records, attributes);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public void bufferedReader(Blackhole blackhole) throws IOException {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file.toFile()), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				blackhole.consume(line);
+			}
+		}
+	}
+
+	@Benchmark
+	public void mappedReader(Blackhole blackhole) throws IOException {
+		try (MappedLineReader reader = new MappedLineReader(file)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				blackhole.consume(line);
+			}
+		}
+	}
+}
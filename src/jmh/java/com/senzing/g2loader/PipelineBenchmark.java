@@ -0,0 +1,105 @@
+package com.senzing.g2loader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.senzing.g2.engine.G2Engine;
+import com.senzing.g2loader.config.CommandOptions;
+
+/**
+ * Loads a whole data file into a {@link StubG2Engine}: reading, parsing, the
+ * loading threads and the engine calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+	/**
+	 * Number of records in the file.
+	 */
+	@Param({ "100000" })
+	public int records;
+
+	/**
+	 * Format of the file, json or csv.
+	 */
+	@Param({ "json", "csv" })
+	public String format;
+
+	/**
+	 * Number of attributes besides the keys.
+	 */
+	@Param({ "5", "200" })
+	public int attributes;
+
+	/**
+	 * Number of loading threads.
+	 */
+	@Param({ "1", "8" })
+	public int threads;
+
+	/**
+	 * Simulated duration of adding a record to the engine.
+	 */
+	@Param({ "0", "100" })
+	public long engineLatencyMicros;
+
+	private Path file;
+	private LongAdder added;
+	private G2LoaderHandler handler;
+	private Map<String, Object> options;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		file = Files.createTempFile("g2loader-bench", "." + format);
+		if ("csv".equals(format)) {
+			BenchmarkData.writeCsv(file, records, attributes);
+		} else {
+			BenchmarkData.writeJsonLines(file, records, attributes);
+		}
+		added = new LongAdder();
+		G2Engine engine = StubG2Engine.create(engineLatencyMicros, added);
+		handler = new G2LoaderHandler(engine);
+		options = new HashMap<>();
+		options.put(CommandOptions.THREADS, String.valueOf(threads));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public long load() throws Exception {
+		long before = added.sum();
+		G2Loader.loadFile(handler, file.toString(), options);
+		long loaded = added.sum() - before;
+		if (loaded != records) {
+			throw new IllegalStateException("Loaded " + loaded + " of " + records + " records");
+		}
+		return loaded;
+	}
+}
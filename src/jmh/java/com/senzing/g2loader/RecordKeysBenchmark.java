@@ -0,0 +1,85 @@
+package com.senzing.g2loader;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.JsonObjectBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading DATA_SOURCE and RECORD_ID through a full object tree with
+ * the streaming {@link RecordKeys} extractor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordKeysBenchmark {
+
+	/**
+	 * Number of attributes besides the keys.
+	 */
+	@Param({ "5", "200" })
+	public int attributes;
+
+	/**
+	 * Whether the keys come before or after the other attributes.
+	 */
+	@Param({ "true", "false" })
+	public boolean keysFirst;
+
+	private String record;
+
+	@Setup
+	public void setUp() {
+		JsonObjectBuilder builder = Json.createObjectBuilder();
+		if (keysFirst) {
+			builder.add("DATA_SOURCE", "TEST").add("RECORD_ID", "1000001");
+		}
+		for (int i = 0; i < attributes; i++) {
+			builder.add("ATTRIBUTE_" + i, "value of attribute " + i);
+		}
+		if (!keysFirst) {
+			builder.add("DATA_SOURCE", "TEST").add("RECORD_ID", "1000001");
+		}
+		record = builder.build().toString();
+	}
+
+	@Benchmark
+	public String objectTree() throws Exception {
+		JsonObject jsonRecord = Json.createReader(new StringReader(record)).readObject();
+
+		JsonValue value = jsonRecord.get("RECORD_ID");
+		if (value == null || value.getValueType() != JsonValue.ValueType.STRING)
+			throw new Exception("RECORD_ID not populated in JSON record");
+		String recordID = ((JsonString) value).getString();
+
+		value = jsonRecord.get("DATA_SOURCE");
+		if (value == null || value.getValueType() != JsonValue.ValueType.STRING)
+			throw new Exception("DATA_SOURCE not populated in JSON record");
+		return ((JsonString) value).getString() + recordID;
+	}
+
+	@Benchmark
+	public String streaming() throws Exception {
+		RecordKeys keys = RecordKeys.fromJson(record);
+		return keys.dataSource + keys.recordID;
+	}
+}
@@ -0,0 +1,57 @@
+package com.senzing.g2loader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Handler adding records to a stub engine that appends the RECORD_ID of every
+ * record added to a file, written straight through so it survives the process
+ * being killed. Set with the {@value WorkerPool#HANDLER_PROPERTY} system
+ * property and configured with system properties that are passed on to the
+ * workers, so records added by several processes end up in the same file.
+ */
+public class RecordingHandler extends G2LoaderHandler {
+
+	/**
+	 * System property naming the file the RECORD_IDs are appended to.
+	 */
+	static final String ADDED_PROPERTY = WorkerPool.PROPERTY_PREFIX + "recording.added";
+	/**
+	 * System property with the simulated latency of the engine in microseconds.
+	 */
+	static final String LATENCY_PROPERTY = WorkerPool.PROPERTY_PREFIX + "recording.latencyMicros";
+
+	private FileChannel added;
+
+	@Override
+	public void init(String iniFile, boolean verboseLogging) throws Exception {
+		g2Engine = StubG2Engine.create(Long.getLong(LATENCY_PROPERTY, 0), new LongAdder());
+		added = FileChannel.open(Paths.get(System.getProperty(ADDED_PROPERTY)), StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+	}
+
+	@Override
+	protected void addRecord(String dataSource, String recordID, String record) throws Exception {
+		super.addRecord(dataSource, recordID, record);
+		ByteBuffer line = ByteBuffer.wrap((recordID + "\n").getBytes(StandardCharsets.UTF_8));
+		synchronized (this) {
+			while (line.hasRemaining()) {
+				added.write(line);
+			}
+		}
+	}
+
+	@Override
+	public void cleanUp() {
+		try {
+			added.close();
+		} catch (IOException e) {
+			// Nothing more is written
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.senzing.g2loader;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.senzing.g2.engine.G2Engine;
+
+/**
+ * In memory {@link G2Engine} for benchmarking the loader without a Senzing
+ * installation. Adding a record takes a configurable simulated latency and
+ * succeeds, every other call returns 0 or null. An engine with a capacity adds
+ * that many records at a time and queues the other calls, so its latency rises
+ * under contention like that of a saturated repository.
+ */
+final class StubG2Engine {
+
+	private StubG2Engine() {
+	}
+
+	/**
+	 * Creates a stub engine.
+	 *
+	 * @param latencyMicros Simulated duration of adding a record, the calling
+	 *                      thread is parked for it
+	 * @param added         Counts the records added
+	 * @return The engine
+	 */
+	static G2Engine create(long latencyMicros, LongAdder added) {
+		return create(latencyMicros, added, 0);
+	}
+
+	/**
+	 * Creates a stub engine adding a limited number of records at a time.
+	 *
+	 * @param latencyMicros Simulated duration of adding a record, the calling
+	 *                      thread is parked for it
+	 * @param added         Counts the records added
+	 * @param capacity      Records added at a time, 0 for no limit
+	 * @return The engine
+	 */
+	static G2Engine create(long latencyMicros, LongAdder added, int capacity) {
+		long latencyNanos = latencyMicros * 1000;
+		Semaphore slots = capacity > 0 ? new Semaphore(capacity, true) : null;
+		return (G2Engine) Proxy.newProxyInstance(G2Engine.class.getClassLoader(), new Class<?>[] { G2Engine.class },
+				(proxy, method, args) -> {
+					if (method.getDeclaringClass() == Object.class) {
+						switch (method.getName()) {
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						default:
+							return "StubG2Engine";
+						}
+					}
+					if (method.getName().startsWith("addRecord")) {
+						if (slots != null) {
+							slots.acquire();
+						}
+						try {
+							if (latencyNanos > 0) {
+								LockSupport.parkNanos(latencyNanos);
+							}
+						} finally {
+							if (slots != null) {
+								slots.release();
+							}
+						}
+						added.increment();
+					}
+					Class<?> returnType = method.getReturnType();
+					if (returnType == int.class) {
+						return 0;
+					} else if (returnType == long.class) {
+						return 0L;
+					} else if (returnType == boolean.class) {
+						return false;
+					}
+					return null;
+				});
+	}
+}
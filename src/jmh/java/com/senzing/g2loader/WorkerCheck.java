@@ -0,0 +1,117 @@
+package com.senzing.g2loader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Loads a file through worker processes adding records to a stub engine, then
+ * checks that every record was added exactly once and that the records the
+ * workers report add up to the total the load reports.
+ * <p>
+ * Run with the classes of the benchmark profile, optionally with the number of
+ * records and of workers, e.g.
+ * {@code java -cp target/benchmarks.jar com.senzing.g2loader.WorkerCheck 200000 3}.
+ */
+public class WorkerCheck {
+
+	private static final int THREADS = 4;
+	private static final Pattern WORKER_SUMMARY = Pattern
+			.compile("^Worker \\d+: loaded (\\d+) records with (\\d+) failures");
+	private static final Pattern TOTAL_SUMMARY = Pattern
+			.compile("^Workers loaded (\\d+) records with (\\d+) failures");
+
+	public static void main(String[] args) throws Exception {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+		int workers = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		Path directory = Files.createTempDirectory("g2loader-worker-check");
+		boolean passed;
+		try {
+			passed = run(directory, records, workers);
+		} finally {
+			try (Stream<Path> files = Files.list(directory)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.deleteIfExists(file);
+				}
+			}
+			Files.deleteIfExists(directory);
+		}
+		System.exit(passed ? 0 : 1);
+	}
+
+	private static boolean run(Path directory, int records, int workers) throws Exception {
+		Path dataFile = directory.resolve("records.jsonl");
+		Path iniFile = directory.resolve("G2Module.ini");
+		Path addedFile = directory.resolve("added.txt");
+		BenchmarkData.writeJsonLines(dataFile, records, BenchmarkData.NARROW);
+		Files.createFile(iniFile);
+		Files.createFile(addedFile);
+
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-D" + WorkerPool.HANDLER_PROPERTY + "=" + RecordingHandler.class.getName());
+		command.add("-D" + RecordingHandler.ADDED_PROPERTY + "=" + addedFile);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(G2Loader.class.getName());
+		command.addAll(List.of("-iniFile", iniFile.toString(), "-noConfigCache", "-dataFile", dataFile.toString(),
+				"-workers", Integer.toString(workers), "-threads", Integer.toString(THREADS)));
+		Process load = new ProcessBuilder(command).directory(directory.toFile()).redirectErrorStream(true).start();
+
+		long workerRecords = 0;
+		long workerFailures = 0;
+		int workerSummaries = 0;
+		long totalRecords = -1;
+		long totalFailures = -1;
+		try (BufferedReader output = new BufferedReader(
+				new InputStreamReader(load.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = output.readLine()) != null) {
+				System.out.println(line);
+				Matcher worker = WORKER_SUMMARY.matcher(line);
+				Matcher total = TOTAL_SUMMARY.matcher(line);
+				if (worker.find()) {
+					workerSummaries++;
+					workerRecords += Long.parseLong(worker.group(1));
+					workerFailures += Long.parseLong(worker.group(2));
+				} else if (total.find()) {
+					totalRecords = Long.parseLong(total.group(1));
+					totalFailures = Long.parseLong(total.group(2));
+				}
+			}
+		}
+		int exitCode = load.waitFor();
+
+		// Record i is on line i + 1
+		int[] added = new int[records];
+		for (String line : Files.readAllLines(addedFile, StandardCharsets.UTF_8)) {
+			added[Integer.parseInt(line)]++;
+		}
+		long lost = 0;
+		long duplicated = 0;
+		for (int count : added) {
+			if (count == 0) {
+				lost++;
+			} else if (count > 1) {
+				duplicated += count - 1;
+			}
+		}
+
+		boolean passed = exitCode == 0 && lost == 0 && duplicated == 0 && workerSummaries == workers
+				&& workerRecords == records && workerFailures == 0 && totalRecords == records && totalFailures == 0;
+		System.out.println((passed ? "passed" : "FAILED") + ": exited with " + exitCode + ", " + lost
+				+ " records lost, " + duplicated + " added twice, " + workerSummaries + " workers reported "
+				+ workerRecords + " records with " + workerFailures + " failures, the load reported " + totalRecords
+				+ " records with " + totalFailures + " failures, of " + records);
+		return passed;
+	}
+}
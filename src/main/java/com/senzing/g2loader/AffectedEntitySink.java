@@ -0,0 +1,185 @@
+package com.senzing.g2loader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+
+/**
+ * Collects the IDs of the entities affected by a load from the info the engine
+ * returns for every record, so only the entities that changed need to be
+ * exported afterwards.
+ * <p>
+ * The loading threads parse the info and add the IDs to a concurrent set, which
+ * drops the ones already seen. New IDs are queued without blocking and written
+ * to the file, one per line, in batches on a separate thread.
+ */
+class AffectedEntitySink {
+
+	private static final String AFFECTED_ENTITIES = "AFFECTED_ENTITIES";
+	private static final String ENTITY_ID = "ENTITY_ID";
+
+	private static final int BATCH_SIZE = 4096;
+	private static final long FLUSH_MILLIS = 1000;
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	// ID telling the writer the load is done, entity IDs are positive
+	private static final Long END_OF_LOAD = -1L;
+
+	private final Path file;
+	private final Set<Long> entityIDs = ConcurrentHashMap.newKeySet();
+	private final BlockingQueue<Long> pending = new LinkedBlockingQueue<>();
+	private Thread writer;
+	private volatile IOException writeError;
+
+	/**
+	 * @param file File the IDs are written to, or null to only collect them
+	 */
+	AffectedEntitySink(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * Creates the file and starts the writer thread.
+	 *
+	 * @throws IOException
+	 */
+	void start() throws IOException {
+		if (file == null) {
+			return;
+		}
+		BufferedWriter output = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), BUFFER_SIZE);
+		writer = new Thread(() -> write(output), "g2loader-affected-entities");
+		writer.start();
+	}
+
+	/**
+	 * Adds the entities affected by a record.
+	 *
+	 * @param info Info returned by the engine, e.g.
+	 *             {"AFFECTED_ENTITIES":[{"ENTITY_ID":1}],...}
+	 */
+	void addInfo(String info) {
+		try (JsonParser parser = Json.createParser(new StringReader(info))) {
+			int depth = 0;
+			// Depth of the AFFECTED_ENTITIES array while in it
+			int affectedDepth = 0;
+			boolean entityID = false;
+			while (parser.hasNext()) {
+				JsonParser.Event event = parser.next();
+				switch (event) {
+				case START_OBJECT:
+				case START_ARRAY:
+					depth++;
+					break;
+				case END_OBJECT:
+				case END_ARRAY:
+					if (--depth < affectedDepth) {
+						affectedDepth = 0;
+					}
+					break;
+				case KEY_NAME:
+					String key = parser.getString();
+					if (depth == 1 && AFFECTED_ENTITIES.equals(key)) {
+						affectedDepth = 2;
+					}
+					entityID = affectedDepth > 0 && depth == affectedDepth + 1 && ENTITY_ID.equals(key);
+					continue;
+				case VALUE_NUMBER:
+					if (entityID) {
+						add(parser.getLong());
+					}
+					break;
+				default:
+					break;
+				}
+				entityID = false;
+			}
+		}
+	}
+
+	/**
+	 * @return Number of entities affected so far
+	 */
+	int size() {
+		return entityIDs.size();
+	}
+
+	/**
+	 * @return The IDs of the affected entities, sorted
+	 */
+	long[] getEntityIDs() {
+		return entityIDs.stream().mapToLong(Long::longValue).sorted().toArray();
+	}
+
+	/**
+	 * @return File the IDs are written to, or null
+	 */
+	Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Writes the IDs still queued and closes the file.
+	 *
+	 * @throws Exception if the file could not be written
+	 */
+	void close() throws Exception {
+		if (writer == null) {
+			return;
+		}
+		pending.put(END_OF_LOAD);
+		writer.join();
+		writer = null;
+		if (writeError != null) {
+			throw new Exception("Failed to write affected entities to " + file + ": " + writeError.getMessage(),
+					writeError);
+		}
+	}
+
+	private void add(long entityID) {
+		if (entityIDs.add(entityID) && file != null) {
+			pending.add(entityID);
+		}
+	}
+
+	private void write(BufferedWriter output) {
+		List<Long> batch = new ArrayList<>(BATCH_SIZE);
+		try (BufferedWriter out = output) {
+			while (true) {
+				Long first = pending.poll(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					// Keep the file current while the load is quiet
+					out.flush();
+					continue;
+				}
+				batch.clear();
+				batch.add(first);
+				pending.drainTo(batch, BATCH_SIZE - 1);
+				for (Long entityID : batch) {
+					if (entityID.equals(END_OF_LOAD)) {
+						return;
+					}
+					out.write(entityID.toString());
+					out.newLine();
+				}
+			}
+		} catch (IOException e) {
+			writeError = e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
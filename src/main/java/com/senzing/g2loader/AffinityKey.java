@@ -0,0 +1,134 @@
+package com.senzing.g2loader;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * The key records are scheduled by, so the records sharing it are loaded by the
+ * same thread in the order they were read and are never in the engine at the
+ * same time.
+ * <p>
+ * The default key is DATA_SOURCE and RECORD_ID, which keeps the versions of a
+ * record in order. Attributes likely to resolve records to the same entity, e.g.
+ * a name or phone number, can be chosen instead. Their values are normalized to
+ * lower case letters and digits and looked up at the top level of the record or
+ * in the objects of its top level lists. A record without any of them is
+ * scheduled by its DATA_SOURCE and RECORD_ID.
+ */
+class AffinityKey {
+
+	static final List<String> RECORD_KEYS = Arrays.asList(RecordKeys.DATA_SOURCE, RecordKeys.RECORD_ID);
+
+	private final List<String> attributes;
+
+	/**
+	 * @param attributes Attributes of the key
+	 */
+	AffinityKey(List<String> attributes) {
+		this.attributes = attributes;
+	}
+
+	/**
+	 * @return Whether the key is the DATA_SOURCE and RECORD_ID of the record
+	 */
+	boolean isRecordKeys() {
+		return attributes.equals(RECORD_KEYS);
+	}
+
+	/**
+	 * Reads the key of a record from its chosen attributes.
+	 *
+	 * @param record JSON record
+	 * @return The normalized values, or null when the record has none of the
+	 *         attributes
+	 *
+	 * @throws Exception if the record is not a JSON object
+	 */
+	String fromAttributes(String record) throws Exception {
+		JsonObject object;
+		try (JsonReader reader = Json.createReader(new StringReader(record))) {
+			object = reader.readObject();
+		} catch (RuntimeException e) {
+			throw new Exception("Record is not a JSON object", e);
+		}
+		StringBuilder key = new StringBuilder();
+		boolean found = false;
+		for (String attribute : attributes) {
+			String value = normalize(find(object, attribute));
+			if (value != null) {
+				found = true;
+				key.append(value);
+			}
+			key.append('|');
+		}
+		return found ? key.toString() : null;
+	}
+
+	/**
+	 * @param dataSource DATA_SOURCE of the record
+	 * @param recordID   RECORD_ID of the record
+	 * @return The key of the record by its keys
+	 */
+	static String fromRecordKeys(String dataSource, String recordID) {
+		return dataSource + '|' + recordID;
+	}
+
+	/**
+	 * @param key Key of a record
+	 * @return Hash of the key spreading keys evenly over the lanes
+	 */
+	static long hash(String key) {
+		return RecordDeduplicator.hash(key, "");
+	}
+
+	private static String find(JsonObject object, String attribute) {
+		String value = stringValue(object.get(attribute));
+		if (value != null) {
+			return value;
+		}
+		for (JsonValue member : object.values()) {
+			if (member.getValueType() == JsonValue.ValueType.ARRAY) {
+				for (JsonValue element : member.asJsonArray()) {
+					if (element.getValueType() == JsonValue.ValueType.OBJECT) {
+						value = stringValue(element.asJsonObject().get(attribute));
+						if (value != null) {
+							return value;
+						}
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static String stringValue(JsonValue value) {
+		if (value == null) {
+			return null;
+		}
+		switch (value.getValueType()) {
+		case STRING:
+			return ((JsonString) value).getString();
+		case NUMBER:
+			return value.toString();
+		default:
+			return null;
+		}
+	}
+
+	private static String normalize(String value) {
+		if (value == null) {
+			return null;
+		}
+		StringBuilder normalized = new StringBuilder(value.length());
+		value.codePoints().filter(Character::isLetterOrDigit)
+				.forEach(c -> normalized.appendCodePoint(Character.toLowerCase(c)));
+		return normalized.length() > 0 ? normalized.toString() : null;
+	}
+}
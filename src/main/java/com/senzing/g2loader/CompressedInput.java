@@ -0,0 +1,121 @@
+package com.senzing.g2loader;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+/**
+ * Opens input files that may be compressed. The compression is detected from
+ * the magic bytes at the start of the file, not from its name.
+ */
+final class CompressedInput {
+
+	enum Compression {
+		NONE, GZIP, BZIP2, ZSTD
+	}
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private CompressedInput() {
+	}
+
+	/**
+	 * Detects the compression of a file.
+	 *
+	 * @param file File to check
+	 * @return The compression, NONE for a plain file
+	 *
+	 * @throws IOException
+	 */
+	static Compression detect(Path file) throws IOException {
+		try (InputStream input = Files.newInputStream(file)) {
+			byte[] magic = new byte[4];
+			int length = input.readNBytes(magic, 0, magic.length);
+			return detect(magic, length);
+		}
+	}
+
+	/**
+	 * Detects the compression of an open file without moving its position.
+	 *
+	 * @param channel Channel of the file to check
+	 * @return The compression, NONE for a plain file
+	 *
+	 * @throws IOException
+	 */
+	static Compression detect(FileChannel channel) throws IOException {
+		ByteBuffer magic = ByteBuffer.allocate(4);
+		while (magic.hasRemaining() && channel.read(magic, magic.position()) > 0) {
+			// A read may return fewer bytes than asked for
+		}
+		return detect(magic.array(), magic.position());
+	}
+
+	static Compression detect(byte[] magic, int length) {
+		if (length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+			return Compression.GZIP;
+		}
+		if (length >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h') {
+			return Compression.BZIP2;
+		}
+		if (length >= 4 && (magic[0] & 0xff) == 0x28 && (magic[1] & 0xff) == 0xb5 && (magic[2] & 0xff) == 0x2f
+				&& (magic[3] & 0xff) == 0xfd) {
+			return Compression.ZSTD;
+		}
+		return Compression.NONE;
+	}
+
+	/**
+	 * Opens a file, decompressing it as it is read. Decompression runs on its own
+	 * thread ahead of the reader, so it overlaps with parsing and loading.
+	 *
+	 * @param file File to open
+	 * @return Stream of the uncompressed content
+	 *
+	 * @throws IOException
+	 */
+	static InputStream open(Path file) throws IOException {
+		return open(Files.newInputStream(file));
+	}
+
+	/**
+	 * Decompresses a stream as it is read. The compression is detected from the
+	 * first bytes of the stream, which are read ahead and kept, so pipes and
+	 * standard input can be decompressed too.
+	 *
+	 * @param stream Stream to read
+	 * @return Stream of the uncompressed content
+	 *
+	 * @throws IOException
+	 */
+	static InputStream open(InputStream stream) throws IOException {
+		InputStream input = new BufferedInputStream(stream, BUFFER_SIZE);
+		try {
+			byte[] magic = new byte[4];
+			input.mark(magic.length);
+			int length = input.readNBytes(magic, 0, magic.length);
+			input.reset();
+			switch (detect(magic, length)) {
+			case GZIP:
+				return new ReadAheadInputStream(new GZIPInputStream(input, BUFFER_SIZE));
+			case BZIP2:
+				return new ReadAheadInputStream(new BZip2CompressorInputStream(input, true));
+			case ZSTD:
+				return new ReadAheadInputStream(new ZstdCompressorInputStream(input));
+			default:
+				return input;
+			}
+		} catch (IOException | RuntimeException e) {
+			input.close();
+			throw e;
+		}
+	}
+}
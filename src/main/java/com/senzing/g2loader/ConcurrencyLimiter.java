@@ -0,0 +1,193 @@
+package com.senzing.g2loader;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of engine calls in flight and adapts the limit to the
+ * latency of the calls, in the manner of TCP congestion control. The lowest
+ * latency seen is taken as the latency of an engine that is not queuing. While
+ * the calls of a sampling window stay close to it and the limit is in use, the
+ * limit grows by one, or doubles until the engine first saturates. Once they
+ * take much longer the engine is saturated and the limit is cut by a fraction.
+ * <p>
+ * The baseline never follows the latency of windows in which calls may be
+ * queuing, or it would follow the queue up and the limit with it. Instead, so it
+ * still follows a repository that gets slower as it grows, the limit is halved
+ * every so often for a few windows and the baseline taken anew from the last of
+ * them, before the limit is put back.
+ * <p>
+ * Calls take a permit of a semaphore holding as many as the limit, and add
+ * their latency to striped counters, so calls do not contend on a lock. The
+ * call ending a window adapts the limit, by adding or taking away permits.
+ */
+class ConcurrencyLimiter {
+
+	static final long WINDOW_NANOS = 100_000_000L;
+
+	private static final int MIN_WINDOW_SAMPLES = 10;
+	// Latency over the baseline that counts as queuing in the engine
+	private static final double TOLERANCE = 1.5;
+	private static final double DECREASE = 0.8;
+	// Windows between measurements of the baseline, and windows measuring it
+	private static final int PROBE_INTERVAL_WINDOWS = 300;
+	private static final int PROBE_WINDOWS = 2;
+	// Weight of the latest window in the settled limit
+	private static final double SETTLING = 0.1;
+
+	private final int maxLimit;
+	private final Permits permits;
+	private volatile int limit;
+
+	// Sampling window, adapted by one call at a time
+	private final LongAdder windowNanos = new LongAdder();
+	private final LongAdder windowSamples = new LongAdder();
+	private final AtomicBoolean adapting = new AtomicBoolean(false);
+	private volatile long windowStart = System.nanoTime();
+	private volatile boolean windowLimitReached;
+	private double baselineNanos = Double.MAX_VALUE;
+	private boolean slowStart = true;
+	private int windowsSinceProbe;
+	// Windows left measuring the baseline, with the limit to put back after
+	private int probeWindowsLeft;
+	private int probedLimit;
+
+	private volatile double settledLimit;
+
+	/**
+	 * @param initialLimit Calls allowed in flight at the start
+	 * @param maxLimit     Most calls ever allowed in flight
+	 */
+	ConcurrencyLimiter(int initialLimit, int maxLimit) {
+		this.maxLimit = Math.max(1, maxLimit);
+		this.limit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+		this.permits = new Permits(limit);
+		this.settledLimit = limit;
+	}
+
+	/**
+	 * Waits until another call is allowed in flight.
+	 *
+	 * @throws InterruptedException
+	 */
+	void acquire() throws InterruptedException {
+		permits.acquire();
+		if (!windowLimitReached && permits.availablePermits() <= 0) {
+			windowLimitReached = true;
+		}
+	}
+
+	/**
+	 * Ends a call and adapts the limit to the latency of the calls once a sampling
+	 * window has passed.
+	 *
+	 * @param latencyNanos Duration of the call
+	 */
+	void release(long latencyNanos) {
+		windowNanos.add(latencyNanos);
+		windowSamples.increment();
+		permits.release();
+
+		long now = System.nanoTime();
+		if (now - windowStart >= WINDOW_NANOS && adapting.compareAndSet(false, true)) {
+			try {
+				endWindow(now);
+			} finally {
+				adapting.set(false);
+			}
+		}
+	}
+
+	private void endWindow(long now) {
+		if (windowSamples.sum() < MIN_WINDOW_SAMPLES) {
+			return;
+		}
+		long samples = windowSamples.sumThenReset();
+		long nanos = windowNanos.sumThenReset();
+		adapt((double) nanos / samples, windowLimitReached);
+		windowStart = now;
+		windowLimitReached = permits.availablePermits() <= 0;
+	}
+
+	private void adapt(double latencyNanos, boolean limitReached) {
+		if (probeWindowsLeft > 0) {
+			// The first windows still see calls started under the full limit
+			if (--probeWindowsLeft == 0) {
+				baselineNanos = latencyNanos;
+				setLimit(probedLimit);
+			}
+			return;
+		}
+		if (latencyNanos < baselineNanos) {
+			baselineNanos = latencyNanos;
+		}
+		if (++windowsSinceProbe >= PROBE_INTERVAL_WINDOWS && limit > 1) {
+			windowsSinceProbe = 0;
+			probeWindowsLeft = PROBE_WINDOWS;
+			probedLimit = limit;
+			setLimit(Math.max(1, limit / 2));
+			return;
+		}
+
+		int newLimit = limit;
+		if (latencyNanos > baselineNanos * TOLERANCE) {
+			newLimit = Math.max(1, (int) (limit * DECREASE));
+			slowStart = false;
+		} else if (limitReached) {
+			// Only grow a limit that is in use, an idle one says nothing about the engine
+			newLimit = Math.min(maxLimit, slowStart ? limit * 2 : limit + 1);
+		}
+		setLimit(newLimit);
+		settledLimit += (newLimit - settledLimit) * SETTLING;
+	}
+
+	private void setLimit(int newLimit) {
+		if (newLimit > limit) {
+			permits.release(newLimit - limit);
+		} else if (newLimit < limit) {
+			// Calls in flight over the new limit hold their permits until they end
+			permits.reducePermits(limit - newLimit);
+		}
+		limit = newLimit;
+	}
+
+	/**
+	 * @return Calls currently allowed in flight
+	 */
+	int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return Limit averaged over the recent sampling windows, which evens out the
+	 *         probing around the best limit
+	 */
+	int getSettledLimit() {
+		return (int) Math.round(settledLimit);
+	}
+
+	/**
+	 * @return Most calls ever allowed in flight
+	 */
+	int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Semaphore whose permits can be taken away, leaving fewer than are in use.
+	 */
+	private static class Permits extends Semaphore {
+
+		private static final long serialVersionUID = 1L;
+
+		Permits(int permits) {
+			super(permits);
+		}
+
+		@Override
+		protected void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
+}
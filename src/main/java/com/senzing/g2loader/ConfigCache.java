@@ -0,0 +1,166 @@
+package com.senzing.g2loader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+/**
+ * Caches the G2 ini file converted to JSON and the default configuration ID of
+ * the repository it points to, so runs that follow each other neither convert
+ * the ini file again nor check the configuration before starting the engine.
+ * The cache is kept next to the ini file unless placed elsewhere, readable by
+ * its owner only as it holds the connection details, and is only used while the
+ * ini file has the size and modification time it was cached with. Without a
+ * cache file the ini file is converted on every run.
+ */
+class ConfigCache {
+
+	private static final String INI_FILE = "iniFile";
+	private static final String MODIFIED = "modified";
+	private static final String SIZE = "size";
+	private static final String INI_JSON = "iniJson";
+	private static final String DEFAULT_CONFIG_ID = "defaultConfigID";
+
+	private final Path iniFile;
+	private final Path cacheFile;
+	private long modified;
+	private long size;
+	private String iniJson;
+	private long defaultConfigID;
+	private boolean changed;
+
+	/**
+	 * @param iniFile   G2 ini file
+	 * @param cacheFile File the cache is kept in, null for no cache
+	 */
+	ConfigCache(Path iniFile, Path cacheFile) {
+		this.iniFile = iniFile.toAbsolutePath().normalize();
+		this.cacheFile = cacheFile != null ? cacheFile.toAbsolutePath().normalize() : null;
+	}
+
+	/**
+	 * @param iniFile G2 ini file
+	 * @return The cache file kept next to the ini file
+	 */
+	static Path defaultFile(Path iniFile) {
+		Path file = iniFile.toAbsolutePath().normalize();
+		return file.resolveSibling(file.getFileName() + ".cache");
+	}
+
+	/**
+	 * Reads the cache, or converts the ini file when it has changed since it was
+	 * cached.
+	 *
+	 * @throws IOException if the ini file cannot be read
+	 */
+	void load() throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(iniFile, BasicFileAttributes.class);
+		modified = attributes.lastModifiedTime().toMillis();
+		size = attributes.size();
+
+		if (cacheFile != null && Files.isRegularFile(cacheFile)) {
+			try (Reader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8);
+					JsonReader jsonReader = Json.createReader(reader)) {
+				JsonObject cached = jsonReader.readObject();
+				JsonNumber cachedModified = cached.getJsonNumber(MODIFIED);
+				JsonNumber cachedSize = cached.getJsonNumber(SIZE);
+				if (iniFile.toString().equals(cached.getString(INI_FILE, null)) && cachedModified != null
+						&& cachedModified.longValue() == modified && cachedSize != null
+						&& cachedSize.longValue() == size) {
+					iniJson = cached.getString(INI_JSON);
+					defaultConfigID = cached.getJsonNumber(DEFAULT_CONFIG_ID).longValue();
+				}
+			} catch (IOException | RuntimeException e) {
+				// An unreadable cache is replaced
+			}
+		}
+		if (iniJson == null) {
+			iniJson = G2LoaderHandler.getG2IniDataAsJson(iniFile.toString());
+			defaultConfigID = 0;
+			changed = true;
+		}
+	}
+
+	/**
+	 * @return The ini file converted to JSON
+	 */
+	String getIniJson() {
+		return iniJson;
+	}
+
+	/**
+	 * @return The default configuration ID the repository had, 0 when not known
+	 */
+	long getDefaultConfigID() {
+		return defaultConfigID;
+	}
+
+	void setDefaultConfigID(long defaultConfigID) {
+		if (this.defaultConfigID != defaultConfigID) {
+			this.defaultConfigID = defaultConfigID;
+			changed = true;
+		}
+	}
+
+	/**
+	 * Writes the cache when it has changed. A cache that cannot be written only
+	 * costs the next run its start up time, so failures are reported and ignored,
+	 * and a directory that cannot be written to is skipped quietly. The cache is
+	 * written to a temporary file of its own first, so loaders starting together
+	 * do not write over each other.
+	 */
+	void save() {
+		if (!changed || cacheFile == null) {
+			return;
+		}
+		Path directory = cacheFile.getParent();
+		if (!Files.isWritable(directory)) {
+			return;
+		}
+		Path tempFile = null;
+		try {
+			String prefix = cacheFile.getFileName() + ".";
+			try {
+				Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rw-------");
+				tempFile = Files.createTempFile(directory, prefix, ".tmp",
+						PosixFilePermissions.asFileAttribute(ownerOnly));
+			} catch (UnsupportedOperationException e) {
+				tempFile = Files.createTempFile(directory, prefix, ".tmp");
+			}
+			try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+				writer.write(Json.createObjectBuilder().add(INI_FILE, iniFile.toString()).add(MODIFIED, modified)
+						.add(SIZE, size).add(INI_JSON, iniJson).add(DEFAULT_CONFIG_ID, defaultConfigID).build()
+						.toString());
+			}
+			Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			tempFile = null;
+			changed = false;
+		} catch (AccessDeniedException e) {
+			// The directory is not ours to write to
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Failed to write configuration cache " + cacheFile + ": " + e.getMessage());
+		} finally {
+			if (tempFile != null) {
+				try {
+					Files.deleteIfExists(tempFile);
+				} catch (IOException e) {
+					// Left behind
+				}
+			}
+		}
+	}
+}
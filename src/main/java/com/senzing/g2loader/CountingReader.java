@@ -0,0 +1,58 @@
+package com.senzing.g2loader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.commons.io.input.ProxyReader;
+
+/**
+ * Reader that counts the characters read through it.
+ */
+class CountingReader extends ProxyReader {
+
+	private long count = 0;
+
+	CountingReader(Reader reader) {
+		super(reader);
+	}
+
+	/**
+	 * Skips exactly the given number of characters.
+	 *
+	 * @param chars Number of characters to skip
+	 *
+	 * @throws IOException if the input ends first
+	 */
+	void skipFully(long chars) throws IOException {
+		long remaining = chars;
+		while (remaining > 0) {
+			long skipped = skip(remaining);
+			if (skipped <= 0) {
+				throw new EOFException("Input ends before character " + chars);
+			}
+			remaining -= skipped;
+		}
+	}
+
+	/**
+	 * @return Number of characters read or skipped so far
+	 */
+	long getCount() {
+		return count;
+	}
+
+	@Override
+	protected void afterRead(int n) {
+		if (n > 0) {
+			count += n;
+		}
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		count += skipped;
+		return skipped;
+	}
+}
@@ -0,0 +1,133 @@
+package com.senzing.g2loader;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Converts CSV rows to JSON records. The header names are escaped once up front
+ * and every row is written straight into a reused buffer. Not thread safe, one
+ * converter is used by the thread reading the file.
+ */
+class CsvRecordConverter {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final String[] keyPrefixes;
+	private final int[] columns;
+	private final int dataSourceColumn;
+	private final int recordIDColumn;
+	private final StringBuilder json = new StringBuilder(1024);
+
+	/**
+	 * @param headers Header names of the CSV file, in column order
+	 */
+	CsvRecordConverter(List<String> headers) {
+		// Like a JSON object builder, a repeated header keeps its first position and
+		// takes the value of its last column
+		Map<String, Integer> lastColumn = new LinkedHashMap<>();
+		for (int i = 0; i < headers.size(); i++) {
+			lastColumn.put(headers.get(i), i);
+		}
+
+		List<String> prefixes = new ArrayList<>();
+		columns = new int[lastColumn.size()];
+		StringBuilder prefix = new StringBuilder();
+		int i = 0;
+		for (Map.Entry<String, Integer> entry : lastColumn.entrySet()) {
+			prefix.setLength(0);
+			prefix.append(i == 0 ? '{' : ',');
+			appendString(prefix, entry.getKey());
+			prefix.append(':');
+			prefixes.add(prefix.toString());
+			columns[i++] = entry.getValue();
+		}
+		keyPrefixes = prefixes.toArray(new String[0]);
+
+		Integer column = lastColumn.get(RecordKeys.DATA_SOURCE);
+		dataSourceColumn = column == null ? -1 : column;
+		column = lastColumn.get(RecordKeys.RECORD_ID);
+		recordIDColumn = column == null ? -1 : column;
+	}
+
+	/**
+	 * Writes a row as a JSON object with a string attribute per header.
+	 *
+	 * @param record CSV row
+	 * @return JSON record
+	 */
+	String toJson(CSVRecord record) {
+		json.setLength(0);
+		if (columns.length == 0) {
+			return "{}";
+		}
+		for (int i = 0; i < columns.length; i++) {
+			json.append(keyPrefixes[i]);
+			appendString(json, record.get(columns[i]));
+		}
+		return json.append('}').toString();
+	}
+
+	/**
+	 * @param record CSV row
+	 * @return Value of the DATA_SOURCE column, or null if there is none
+	 */
+	String getDataSource(CSVRecord record) {
+		return dataSourceColumn < 0 ? null : record.get(dataSourceColumn);
+	}
+
+	/**
+	 * @param record CSV row
+	 * @return Value of the RECORD_ID column, or null if there is none
+	 */
+	String getRecordID(CSVRecord record) {
+		return recordIDColumn < 0 ? null : record.get(recordIDColumn);
+	}
+
+	/**
+	 * Appends a quoted JSON string, escaped the same way the javax.json generator
+	 * does.
+	 */
+	static void appendString(StringBuilder out, String value) {
+		out.append('"');
+		int start = 0;
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\') {
+				continue;
+			}
+			out.append(value, start, i);
+			start = i + 1;
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\b':
+				out.append("\\b");
+				break;
+			case '\f':
+				out.append("\\f");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+			}
+		}
+		out.append(value, start, length).append('"');
+	}
+}
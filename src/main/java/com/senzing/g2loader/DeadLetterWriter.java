@@ -0,0 +1,178 @@
+package com.senzing.g2loader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+
+/**
+ * Writes the records that failed to load to a dead-letter file, one JSON line
+ * per record with its line number, the error code and message of the failure
+ * and the record itself. The lines are written on a separate thread through a
+ * buffer, so a feed with many failures does not slow down the loading threads.
+ * A dead-letter file can be loaded again with -retryFailed.
+ */
+class DeadLetterWriter {
+
+	static final String LINE = "line";
+	static final String ERROR_CODE = "errorCode";
+	static final String MESSAGE = "message";
+	static final String RECORD = "record";
+
+	private static final int QUEUE_SIZE = 1024;
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private static final DeadLetter END_OF_LOAD = new DeadLetter(-1, 0, null, null);
+
+	private final Path file;
+	private final BlockingQueue<DeadLetter> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+	private Thread writer;
+	private volatile IOException writeError;
+
+	/**
+	 * @param file Dead-letter file
+	 */
+	DeadLetterWriter(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * Creates the file and starts the writer thread.
+	 *
+	 * @throws IOException
+	 */
+	void start() throws IOException {
+		BufferedWriter output = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), BUFFER_SIZE);
+		writer = new Thread(() -> write(output), "g2loader-dead-letters");
+		writer.start();
+	}
+
+	/**
+	 * Hands a failed record to the writer. Blocks while the writer is behind.
+	 *
+	 * @param line    Line of the record in the input
+	 * @param failure Why the record failed
+	 * @param record  The record
+	 *
+	 * @throws InterruptedException
+	 */
+	void add(long line, Exception failure, String record) throws InterruptedException {
+		int errorCode = failure instanceof RecordException ? ((RecordException) failure).getErrorCode() : 0;
+		queue.put(new DeadLetter(line, errorCode, failure.getMessage(), record));
+	}
+
+	/**
+	 * @return The dead-letter file
+	 */
+	Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Writes the records still queued and closes the file.
+	 *
+	 * @throws Exception if the file could not be written
+	 */
+	void close() throws Exception {
+		if (writer == null) {
+			return;
+		}
+		queue.put(END_OF_LOAD);
+		writer.join();
+		writer = null;
+		if (writeError != null) {
+			throw new Exception("Failed to write dead-letter file " + file + ": " + writeError.getMessage(),
+					writeError);
+		}
+	}
+
+	/**
+	 * Reads a line of a dead-letter file.
+	 *
+	 * @param line Line of the file
+	 * @return The failed record with its line number and failure
+	 */
+	static JsonObject read(String line) {
+		try (JsonReader reader = Json.createReader(new StringReader(line))) {
+			return reader.readObject();
+		}
+	}
+
+	private void write(BufferedWriter output) {
+		try {
+			DeadLetter deadLetter;
+			while ((deadLetter = queue.take()) != END_OF_LOAD) {
+				if (output != null) {
+					try {
+						writeLine(output, deadLetter);
+					} catch (IOException e) {
+						writeError = e;
+						closeQuietly(output);
+						output = null;
+					}
+				}
+				if (output == null) {
+					// Keep the record on the console rather than losing it with the file
+					System.err.println("FAILED: line " + deadLetter.line + " [" + deadLetter.message + "] "
+							+ deadLetter.record);
+				}
+			}
+			if (output != null) {
+				output.close();
+			}
+		} catch (IOException e) {
+			writeError = e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			closeQuietly(output);
+		}
+	}
+
+	private void writeLine(BufferedWriter output, DeadLetter deadLetter) throws IOException {
+		JsonObjectBuilder line = Json.createObjectBuilder().add(LINE, deadLetter.line).add(ERROR_CODE,
+				deadLetter.errorCode);
+		if (deadLetter.message != null) {
+			line.add(MESSAGE, deadLetter.message);
+		}
+		line.add(RECORD, deadLetter.record);
+		output.write(line.build().toString());
+		output.newLine();
+		// Keep the file current while failures are sparse
+		if (queue.isEmpty()) {
+			output.flush();
+		}
+	}
+
+	private static void closeQuietly(BufferedWriter output) {
+		try {
+			if (output != null) {
+				output.close();
+			}
+		} catch (IOException e) {
+			// Already failed
+		}
+	}
+
+	private static class DeadLetter {
+		final long line;
+		final int errorCode;
+		final String message;
+		final String record;
+
+		DeadLetter(long line, int errorCode, String message, String record) {
+			this.line = line;
+			this.errorCode = errorCode;
+			this.message = message;
+			this.record = record;
+		}
+	}
+}
@@ -0,0 +1,483 @@
+package com.senzing.g2loader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers a hash of the content of every record loaded, in a SQLite database
+ * kept between loads, so a load of a full snapshot only sends the engine the
+ * records that are new or have changed since the previous one.
+ * <p>
+ * Every load is a run. With deletes tracked, every record of the input is
+ * stamped with the run, and once the whole input has been read the records of
+ * its data sources that were not stamped have left the snapshot and are deleted.
+ * A record that fails to load keeps its old hash, so the next load sends it
+ * again.
+ * <p>
+ * Every loading thread looks records up through a read connection of its own,
+ * and writes are queued to a writer thread that commits them in batches, so the
+ * loading threads neither wait on each other nor on the disk. Hashes written but
+ * not committed yet are kept in memory for the lookups. Writes are committed
+ * in batches; a crash loses at most a batch, whose records are then sent again.
+ */
+class DeltaIndex {
+
+	private static final int COMMIT_INTERVAL = 10_000;
+	// Writes left uncommitted while no more come
+	private static final long COMMIT_DELAY_MILLIS = 1000;
+	private static final int DELETE_BATCH_SIZE = 1_000;
+	private static final int QUEUE_SIZE = 16 * 1024;
+
+	private static final String SELECT_HASH = "SELECT hash FROM records WHERE data_source = ? AND record_id = ?";
+
+	// Write telling the writer the run is done
+	private static final Write END_OF_WRITES = new Write(null, null, 0, false);
+
+	private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+
+	private final Path indexFile;
+	private final boolean trackDeletes;
+
+	// Used by the writer thread, then by deleteMissing and close once it stopped
+	private Connection connection;
+	private PreparedStatement upsertRecord;
+	private PreparedStatement stampRecord;
+	private long run;
+	private int uncommitted;
+	private final Set<String> dataSources = new ConcurrentSkipListSet<>();
+
+	private final List<Connection> readers = Collections.synchronizedList(new ArrayList<>());
+	private final ThreadLocal<PreparedStatement> selectHash = new ThreadLocal<>();
+	private final Map<String, Long> uncommittedHashes = new ConcurrentHashMap<>();
+	private final BlockingQueue<Write> writes = new ArrayBlockingQueue<>(QUEUE_SIZE);
+	private Thread writer;
+	private volatile Exception writeError;
+
+	private final AtomicInteger unchanged = new AtomicInteger(0);
+	private final AtomicInteger deleted = new AtomicInteger(0);
+
+	/**
+	 * @param indexFile    SQLite database of the index, created when missing
+	 * @param trackDeletes Whether records missing from the input are deleted
+	 */
+	DeltaIndex(Path indexFile, boolean trackDeletes) {
+		this.indexFile = indexFile;
+		this.trackDeletes = trackDeletes;
+	}
+
+	/**
+	 * Opens the index and starts a run.
+	 *
+	 * @param resume Whether to continue the last run if it did not complete, as
+	 *               the records read before it stopped are not read again
+	 *
+	 * @throws SQLException
+	 */
+	synchronized void open(boolean resume) throws SQLException {
+		connection = DriverManager.getConnection("jdbc:sqlite:" + indexFile);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("PRAGMA journal_mode=WAL");
+			statement.execute("PRAGMA synchronous=NORMAL");
+			statement.execute("CREATE TABLE IF NOT EXISTS records (data_source TEXT NOT NULL, record_id TEXT NOT NULL,"
+					+ " hash INTEGER NOT NULL, run INTEGER NOT NULL, PRIMARY KEY (data_source, record_id))"
+					+ " WITHOUT ROWID");
+			statement.execute("CREATE TABLE IF NOT EXISTS runs (run INTEGER PRIMARY KEY AUTOINCREMENT,"
+					+ " started INTEGER NOT NULL, completed INTEGER)");
+		}
+		connection.setAutoCommit(false);
+
+		run = 0;
+		if (resume) {
+			try (Statement statement = connection.createStatement();
+					ResultSet result = statement.executeQuery(
+							"SELECT run, completed FROM runs ORDER BY run DESC LIMIT 1")) {
+				if (result.next() && result.getObject(2) == null) {
+					run = result.getLong(1);
+				}
+			}
+		}
+		if (run == 0) {
+			try (PreparedStatement insert = connection.prepareStatement("INSERT INTO runs (started) VALUES (?)",
+					Statement.RETURN_GENERATED_KEYS)) {
+				insert.setLong(1, System.currentTimeMillis());
+				insert.executeUpdate();
+				try (ResultSet keys = insert.getGeneratedKeys()) {
+					keys.next();
+					run = keys.getLong(1);
+				}
+			}
+		}
+		connection.commit();
+
+		upsertRecord = connection.prepareStatement("INSERT INTO records (data_source, record_id, hash, run)"
+				+ " VALUES (?, ?, ?, ?) ON CONFLICT (data_source, record_id) DO UPDATE SET hash = excluded.hash,"
+				+ " run = excluded.run");
+		stampRecord = connection
+				.prepareStatement("UPDATE records SET run = ? WHERE data_source = ? AND record_id = ?");
+		writer = new Thread(this::write, "g2loader-delta-index");
+		writer.start();
+	}
+
+	/**
+	 * Hashes the content of a record.
+	 *
+	 * @param record JSON record
+	 * @return The first 64 bits of its SHA-256 digest
+	 */
+	static long hash(String record) {
+		MessageDigest digest = DIGEST.get();
+		return ByteBuffer.wrap(digest.digest(record.getBytes(StandardCharsets.UTF_8))).getLong();
+	}
+
+	/**
+	 * Checks whether a record was loaded before with the same content. The record
+	 * counts as seen by this run either way.
+	 *
+	 * @param dataSource DATA_SOURCE of the record
+	 * @param recordID   RECORD_ID of the record
+	 * @param hash       Hash of its content
+	 * @return Whether the record is unchanged and need not be loaded
+	 *
+	 * @throws SQLException
+	 */
+	boolean isUnchanged(String dataSource, String recordID, long hash) throws SQLException {
+		dataSources.add(dataSource);
+		boolean same;
+		Long uncommittedHash = uncommittedHashes.get(key(dataSource, recordID));
+		if (uncommittedHash != null) {
+			same = uncommittedHash == hash;
+		} else {
+			PreparedStatement select = getSelectHash();
+			select.setString(1, dataSource);
+			select.setString(2, recordID);
+			try (ResultSet result = select.executeQuery()) {
+				same = result.next() && result.getLong(1) == hash;
+			}
+		}
+		if (same) {
+			if (trackDeletes) {
+				queue(new Write(dataSource, recordID, 0, false));
+			}
+			unchanged.incrementAndGet();
+		}
+		return same;
+	}
+
+	/**
+	 * Remembers the content of a record that was loaded.
+	 *
+	 * @throws SQLException
+	 */
+	void recordLoaded(String dataSource, String recordID, long hash) throws SQLException {
+		uncommittedHashes.put(key(dataSource, recordID), hash);
+		queue(new Write(dataSource, recordID, hash, true));
+	}
+
+	/**
+	 * Stamps a record that failed to load as seen, keeping its old content so it
+	 * is loaded again by the next run.
+	 *
+	 * @throws SQLException
+	 */
+	void recordFailed(String dataSource, String recordID) throws SQLException {
+		if (trackDeletes) {
+			queue(new Write(dataSource, recordID, 0, false));
+		}
+	}
+
+	/**
+	 * Deletes the records of the data sources of this run that it has not seen.
+	 * Only called once the whole input has been read.
+	 *
+	 * @param handler Handler the records are deleted through
+	 * @return Number of records that failed to be deleted, which are kept
+	 *
+	 * @throws Exception
+	 */
+	synchronized int deleteMissing(G2LoaderHandler handler) throws Exception {
+		if (!trackDeletes || dataSources.isEmpty()) {
+			return 0;
+		}
+		stopWriter();
+		connection.commit();
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DROP TABLE IF EXISTS temp.missing");
+			statement.execute("CREATE TEMP TABLE missing (data_source TEXT, record_id TEXT)");
+		}
+		String placeholders = String.join(", ", Collections.nCopies(dataSources.size(), "?"));
+		try (PreparedStatement collect = connection.prepareStatement("INSERT INTO temp.missing"
+				+ " SELECT data_source, record_id FROM records WHERE run < ? AND data_source IN (" + placeholders
+				+ ")")) {
+			collect.setLong(1, run);
+			int i = 2;
+			for (String dataSource : dataSources) {
+				collect.setString(i++, dataSource);
+			}
+			collect.executeUpdate();
+		}
+
+		int failures = 0;
+		try (PreparedStatement next = connection.prepareStatement(
+				"SELECT rowid, data_source, record_id FROM temp.missing WHERE rowid > ? ORDER BY rowid LIMIT ?");
+				PreparedStatement delete = connection
+						.prepareStatement("DELETE FROM records WHERE data_source = ? AND record_id = ?")) {
+			long lastRow = 0;
+			while (true) {
+				List<String[]> batch = new ArrayList<>();
+				next.setLong(1, lastRow);
+				next.setInt(2, DELETE_BATCH_SIZE);
+				try (ResultSet result = next.executeQuery()) {
+					while (result.next()) {
+						lastRow = result.getLong(1);
+						batch.add(new String[] { result.getString(2), result.getString(3) });
+					}
+				}
+				if (batch.isEmpty()) {
+					break;
+				}
+				for (String[] keys : batch) {
+					try {
+						handler.deleteRecord(keys[0], keys[1]);
+					} catch (Exception e) {
+						System.err.println("FAILED: delete of " + keys[0] + " " + keys[1] + " [" + e.getMessage() + "]");
+						failures++;
+						continue;
+					}
+					delete.setString(1, keys[0]);
+					delete.setString(2, keys[1]);
+					delete.executeUpdate();
+					deleted.incrementAndGet();
+					written();
+				}
+			}
+		}
+		connection.commit();
+		return failures;
+	}
+
+	/**
+	 * @return Number of records skipped as unchanged
+	 */
+	int getUnchanged() {
+		return unchanged.get();
+	}
+
+	/**
+	 * @return Number of records deleted as missing from the input
+	 */
+	int getDeleted() {
+		return deleted.get();
+	}
+
+	/**
+	 * Commits the index and closes it.
+	 *
+	 * @param completed Whether the run completed, a run that did not can be
+	 *                  resumed
+	 *
+	 * @throws SQLException
+	 */
+	synchronized void close(boolean completed) throws SQLException {
+		if (connection == null) {
+			return;
+		}
+		try {
+			stopWriter();
+			if (completed) {
+				try (PreparedStatement update = connection
+						.prepareStatement("UPDATE runs SET completed = ? WHERE run = ?")) {
+					update.setLong(1, System.currentTimeMillis());
+					update.setLong(2, run);
+					update.executeUpdate();
+				}
+			}
+			connection.commit();
+		} finally {
+			synchronized (readers) {
+				for (Connection reader : readers) {
+					reader.close();
+				}
+				readers.clear();
+			}
+			connection.close();
+			connection = null;
+		}
+	}
+
+	private static String key(String dataSource, String recordID) {
+		return dataSource + '\0' + recordID;
+	}
+
+	/**
+	 * @return The lookup of the read connection of the calling thread, opened on
+	 *         its first lookup
+	 */
+	private PreparedStatement getSelectHash() throws SQLException {
+		PreparedStatement select = selectHash.get();
+		if (select == null) {
+			Connection reader = DriverManager.getConnection("jdbc:sqlite:" + indexFile);
+			readers.add(reader);
+			select = reader.prepareStatement(SELECT_HASH);
+			selectHash.set(select);
+		}
+		return select;
+	}
+
+	private void queue(Write write) throws SQLException {
+		checkWriteError();
+		try {
+			writes.put(write);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted writing delta index " + indexFile, e);
+		}
+	}
+
+	/**
+	 * Commits the writes queued and stops the writer, leaving the connection to
+	 * the calling thread.
+	 *
+	 * @throws SQLException if a write failed
+	 */
+	private void stopWriter() throws SQLException {
+		if (writer != null) {
+			try {
+				writes.put(END_OF_WRITES);
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted writing delta index " + indexFile, e);
+			}
+			writer = null;
+		}
+		checkWriteError();
+	}
+
+	/**
+	 * Applies the queued writes, committing them in batches. After a failure the
+	 * writes are taken off the queue and dropped, so no loading thread blocks on
+	 * it.
+	 */
+	private void write() {
+		List<Write> batch = new ArrayList<>(COMMIT_INTERVAL);
+		List<Write> uncommittedWrites = new ArrayList<>(COMMIT_INTERVAL);
+		try {
+			boolean end = false;
+			while (!end) {
+				batch.clear();
+				Write first = uncommittedWrites.isEmpty() ? writes.take()
+						: writes.poll(COMMIT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+				if (first != null) {
+					batch.add(first);
+					writes.drainTo(batch, COMMIT_INTERVAL - 1);
+				}
+				for (Write write : batch) {
+					if (write == END_OF_WRITES) {
+						end = true;
+					} else {
+						uncommittedWrites.add(write);
+					}
+				}
+				boolean commit = end || first == null || uncommittedWrites.size() >= COMMIT_INTERVAL;
+				if (writeError == null) {
+					try {
+						writeBatch(batch, commit);
+					} catch (SQLException | RuntimeException e) {
+						writeError = e;
+					}
+				}
+				if (commit || writeError != null) {
+					for (Write write : uncommittedWrites) {
+						if (write.upsert) {
+							// Only a hash not written again since
+							uncommittedHashes.remove(key(write.dataSource, write.recordID), write.hash);
+						}
+					}
+					uncommittedWrites.clear();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeBatch(List<Write> batch, boolean commit) throws SQLException {
+		for (Write write : batch) {
+			if (write == END_OF_WRITES) {
+				continue;
+			}
+			if (write.upsert) {
+				upsertRecord.setString(1, write.dataSource);
+				upsertRecord.setString(2, write.recordID);
+				upsertRecord.setLong(3, write.hash);
+				upsertRecord.setLong(4, run);
+				upsertRecord.addBatch();
+			} else {
+				stampRecord.setLong(1, run);
+				stampRecord.setString(2, write.dataSource);
+				stampRecord.setString(3, write.recordID);
+				stampRecord.addBatch();
+			}
+		}
+		upsertRecord.executeBatch();
+		stampRecord.executeBatch();
+		if (commit) {
+			connection.commit();
+		}
+	}
+
+	private void checkWriteError() throws SQLException {
+		if (writeError != null) {
+			throw new SQLException("Failed to write delta index " + indexFile + ": " + writeError.getMessage(),
+					writeError);
+		}
+	}
+
+	private void written() throws SQLException {
+		if (++uncommitted >= COMMIT_INTERVAL) {
+			connection.commit();
+			uncommitted = 0;
+		}
+	}
+
+	private static class Write {
+		final String dataSource;
+		final String recordID;
+		final long hash;
+		// Whether the hash is written, otherwise the record is only stamped
+		final boolean upsert;
+
+		Write(String dataSource, String recordID, long hash, boolean upsert) {
+			this.dataSource = dataSource;
+			this.recordID = recordID;
+			this.hash = hash;
+			this.upsert = upsert;
+		}
+	}
+}
@@ -0,0 +1,406 @@
+package com.senzing.g2loader;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+import com.senzing.g2.engine.G2Engine;
+
+/**
+ * Exports the entities of the repository to a file. The entities are fetched
+ * from the engine on the calling thread and handed in batches through bounded
+ * queues to writer threads, so writing to disk does not hold up the next fetch.
+ * A file name ending in ".gz" is compressed with gzip while it is written.
+ * <p>
+ * A sharded export rolls over to a new file every given number of entities. The
+ * shards are spread over the writer threads, which compress and write them in
+ * parallel, and a manifest lists the entities and checksum of every shard.
+ */
+class EntityExporter {
+
+	static final int BUFFER_SIZE = 1024 * 1024;
+
+	private static final int BATCH_SIZE = 256;
+	private static final int QUEUED_BATCHES = 64;
+	private static final long OFFER_TIMEOUT_MILLIS = 100;
+	// Engine error 0037E, "Unknown resolved entity value '<entity ID>'", for an
+	// entity ID it does not know
+	private static final int UNKNOWN_ENTITY_ERROR_CODE = 37;
+	private static final String UNKNOWN_ENTITY_MESSAGE = "Unknown resolved entity value";
+
+	// Batch telling a writer the export is done
+	private static final Batch END_OF_EXPORT = new Batch(-1);
+
+	private final G2Engine g2Engine;
+	private final int flags;
+	private int shardSize = 0;
+	private int writers = 1;
+
+	private volatile Throwable writeError;
+	private final List<Shard> shards = new ArrayList<>();
+
+	/**
+	 * @param g2Engine Engine the entities are exported from
+	 * @param flags    Flags of the export
+	 */
+	EntityExporter(G2Engine g2Engine, int flags) {
+		this.g2Engine = g2Engine;
+		this.flags = flags;
+	}
+
+	/**
+	 * Splits the export into shards. The shards of an export to "export.jsonl.gz"
+	 * are named "export-00001.jsonl.gz" and so on, its manifest
+	 * "export-manifest.json".
+	 *
+	 * @param shardSize Entities per shard
+	 * @param writers   Number of threads writing shards
+	 */
+	void setSharding(int shardSize, int writers) {
+		this.shardSize = shardSize;
+		this.writers = Math.max(1, writers);
+	}
+
+	/**
+	 * Exports the entities. The export handle is closed and the files completed
+	 * or abandoned whether or not the export succeeds.
+	 *
+	 * @param outFile File the export is written to
+	 * @return Number of entities exported
+	 *
+	 * @throws Exception if the export could not be written
+	 */
+	long export(Path outFile) throws Exception {
+		long exportHandle = g2Engine.exportJSONEntityReport(flags);
+		List<BlockingQueue<Batch>> queues = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < writers; i++) {
+			BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+			Thread thread = new Thread(() -> write(outFile, queue));
+			thread.setName("g2loader-export-writer-" + (i + 1));
+			queues.add(queue);
+			threads.add(thread);
+			thread.start();
+		}
+
+		long entities = 0;
+		try {
+			int shard = 0;
+			int inShard = 0;
+			Batch batch = new Batch(shard);
+			String response = g2Engine.fetchNext(exportHandle);
+			while (response != null) {
+				batch.entities.add(response);
+				entities++;
+				inShard++;
+				if (inShard == shardSize) {
+					batch.last = true;
+					hand(queues, batch);
+					batch = new Batch(++shard);
+					inShard = 0;
+				} else if (batch.entities.size() == BATCH_SIZE) {
+					hand(queues, batch);
+					batch = new Batch(shard);
+				}
+				response = g2Engine.fetchNext(exportHandle);
+			}
+			// An empty export still gets a file
+			if (inShard > 0 || shard == 0) {
+				batch.last = true;
+				hand(queues, batch);
+			}
+		} finally {
+			g2Engine.closeExport(exportHandle);
+			for (int i = 0; i < writers; i++) {
+				while (threads.get(i).isAlive()
+						&& !queues.get(i).offer(END_OF_EXPORT, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+					// The writer is still draining its queue
+				}
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+		if (writeError != null) {
+			throw new Exception("Failed to write export to " + outFile + ": " + writeError, writeError);
+		}
+		if (shardSize > 0) {
+			writeManifest(outFile, entities);
+		}
+		return entities;
+	}
+
+	/**
+	 * Exports the given entities only, e.g. the ones a load affected. The entities
+	 * are fetched in parallel and written in batches as they come, so the file is
+	 * not in the order of the IDs. An entity that no longer exists, as all its
+	 * records were deleted or moved to other entities, is written as
+	 * {"RESOLVED_ENTITY":{"ENTITY_ID":...},"REMOVED":true}.
+	 *
+	 * @param outFile   File the export is written to
+	 * @param entityIDs IDs of the entities
+	 * @param fetchers  Number of threads fetching entities
+	 * @return Number of entities removed
+	 *
+	 * @throws Exception if an entity could not be fetched or the export written
+	 */
+	long exportEntities(Path outFile, long[] entityIDs, int fetchers) throws Exception {
+		AtomicInteger next = new AtomicInteger(0);
+		AtomicLong removed = new AtomicLong(0);
+		List<Thread> threads = new ArrayList<>();
+		try (Writer writer = openExportFile(outFile)) {
+			for (int i = 0; i < Math.max(1, fetchers); i++) {
+				Thread thread = new Thread(() -> fetch(writer, entityIDs, next, removed));
+				thread.setName("g2loader-export-fetcher-" + (i + 1));
+				threads.add(thread);
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+		if (writeError != null) {
+			throw new Exception("Failed to export entities to " + outFile + ": " + writeError, writeError);
+		}
+		return removed.get();
+	}
+
+	/**
+	 * @return Number of files written by the export
+	 */
+	synchronized int getShardCount() {
+		return shards.size();
+	}
+
+	/**
+	 * Opens a file for writing with a large buffer, compressed with gzip when its
+	 * name ends in ".gz".
+	 *
+	 * @param file File to write
+	 * @return Writer of the file
+	 *
+	 * @throws IOException
+	 */
+	static Writer openExportFile(Path file) throws IOException {
+		return openExportFile(file, Files.newOutputStream(file));
+	}
+
+	private static Writer openExportFile(Path file, OutputStream fileOutput) throws IOException {
+		OutputStream output = new BufferedOutputStream(fileOutput, BUFFER_SIZE);
+		if (file.getFileName().toString().endsWith(".gz")) {
+			output = new GZIPOutputStream(output, BUFFER_SIZE);
+		}
+		return new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	/**
+	 * Returns a file next to the export file with a suffix inserted before its
+	 * extensions, e.g. export-00001.jsonl.gz for export.jsonl.gz.
+	 *
+	 * @param outFile   Export file
+	 * @param suffix    Suffix of the name
+	 * @param extension Extension replacing the one of the export file, or null to
+	 *                  keep it
+	 * @return The file
+	 */
+	static Path siblingFile(Path outFile, String suffix, String extension) {
+		String name = outFile.getFileName().toString();
+		int dot = name.indexOf('.', 1);
+		if (dot < 0) {
+			dot = name.length();
+		}
+		return outFile.resolveSibling(
+				name.substring(0, dot) + "-" + suffix + (extension != null ? extension : name.substring(dot)));
+	}
+
+	private void hand(List<BlockingQueue<Batch>> queues, Batch batch) throws Exception {
+		BlockingQueue<Batch> queue = queues.get(batch.shard % writers);
+		while (writeError == null) {
+			if (queue.offer(batch, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				return;
+			}
+		}
+		throw new Exception("Failed to write export: " + writeError, writeError);
+	}
+
+	private void write(Path outFile, BlockingQueue<Batch> queue) {
+		Shard shard = null;
+		try {
+			Batch batch;
+			while ((batch = queue.take()) != END_OF_EXPORT) {
+				if (shard == null) {
+					shard = openShard(outFile, batch.shard);
+				}
+				for (String entity : batch.entities) {
+					shard.writer.write(entity);
+				}
+				shard.entities += batch.entities.size();
+				if (batch.last) {
+					closeShard(shard);
+					shard = null;
+				}
+			}
+		} catch (Throwable e) {
+			writeError = e;
+			queue.clear();
+		} finally {
+			// A shard still open was cut off by a failed export
+			if (shard != null) {
+				abandonShard(shard);
+			}
+		}
+	}
+
+	private void fetch(Writer writer, long[] entityIDs, AtomicInteger next, AtomicLong removed) {
+		List<String> batch = new ArrayList<>(BATCH_SIZE);
+		try {
+			int index;
+			while (writeError == null && (index = next.getAndIncrement()) < entityIDs.length) {
+				long entityID = entityIDs[index];
+				StringBuffer response = new StringBuffer();
+				if (g2Engine.getEntityByEntityIDV2(entityID, flags, response) == 0) {
+					batch.add(response.toString());
+				} else if (isUnknownEntity()) {
+					batch.add(Json.createObjectBuilder()
+							.add("RESOLVED_ENTITY", Json.createObjectBuilder().add("ENTITY_ID", entityID))
+							.add("REMOVED", true).build().toString());
+					removed.incrementAndGet();
+				} else {
+					throw new Exception("G2Engine failed to getEntityByEntityIDV2 of entity " + entityID
+							+ " with error: " + G2LoaderHandler.g2ErrorMessage(g2Engine));
+				}
+				if (batch.size() == BATCH_SIZE) {
+					writeBatch(writer, batch);
+				}
+			}
+			writeBatch(writer, batch);
+		} catch (Throwable e) {
+			writeError = e;
+		}
+	}
+
+	/**
+	 * @return Whether the last call failed as the entity does not exist. Any
+	 *         other failure fails the export rather than be taken for a removal.
+	 */
+	private boolean isUnknownEntity() {
+		if (g2Engine.getLastExceptionCode() != UNKNOWN_ENTITY_ERROR_CODE) {
+			return false;
+		}
+		String message = g2Engine.getLastException();
+		return message != null && message.contains(UNKNOWN_ENTITY_MESSAGE);
+	}
+
+	private static void writeBatch(Writer writer, List<String> batch) throws IOException {
+		synchronized (writer) {
+			for (String entity : batch) {
+				writer.write(entity);
+				writer.write('\n');
+			}
+		}
+		batch.clear();
+	}
+
+	private Shard openShard(Path outFile, int number) throws IOException, NoSuchAlgorithmException {
+		if (shardSize == 0) {
+			return new Shard(number, outFile, openExportFile(outFile), null, null);
+		}
+		Path file = siblingFile(outFile, String.format("%05d", number + 1), null);
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		CountingOutputStream counter = new CountingOutputStream(
+				new DigestOutputStream(Files.newOutputStream(file), digest));
+		return new Shard(number, file, openExportFile(file, counter), digest, counter);
+	}
+
+	private void closeShard(Shard shard) throws IOException {
+		shard.writer.close();
+		if (shard.digest != null) {
+			StringBuilder checksum = new StringBuilder();
+			for (byte b : shard.digest.digest()) {
+				checksum.append(String.format("%02x", b));
+			}
+			shard.checksum = checksum.toString();
+		}
+		synchronized (this) {
+			shards.add(shard);
+		}
+	}
+
+	private void abandonShard(Shard shard) {
+		try {
+			shard.writer.close();
+		} catch (IOException e) {
+			// The file is removed regardless
+		}
+		try {
+			Files.deleteIfExists(shard.file);
+		} catch (IOException e) {
+			System.out.println("Failed to remove incomplete export file " + shard.file + ": " + e.getMessage());
+		}
+	}
+
+	private synchronized void writeManifest(Path outFile, long entities) throws IOException {
+		JsonArrayBuilder files = Json.createArrayBuilder();
+		shards.sort(Comparator.comparingInt(shard -> shard.number));
+		for (Shard shard : shards) {
+			files.add(Json.createObjectBuilder().add("file", shard.file.getFileName().toString())
+					.add("entities", shard.entities).add("bytes", shard.counter.getByteCount())
+					.add("sha256", shard.checksum));
+		}
+		Path manifest = siblingFile(outFile, "manifest", ".json");
+		try (Writer writer = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8)) {
+			writer.write(Json.createObjectBuilder().add("entities", entities).add("shards", files).build().toString());
+		}
+	}
+
+	private static class Batch {
+		final int shard;
+		final List<String> entities = new ArrayList<>(BATCH_SIZE);
+		boolean last;
+
+		Batch(int shard) {
+			this.shard = shard;
+		}
+	}
+
+	private static class Shard {
+		final int number;
+		final Path file;
+		final Writer writer;
+		final MessageDigest digest;
+		final CountingOutputStream counter;
+		long entities;
+		String checksum;
+
+		Shard(int number, Path file, Writer writer, MessageDigest digest, CountingOutputStream counter) {
+			this.number = number;
+			this.file = file;
+			this.writer = writer;
+			this.digest = digest;
+			this.counter = counter;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.senzing.g2loader;
+
+/**
+ * Failure that no record can be loaded after, e.g. a worker process that
+ * stopped. The loader aborts the load instead of failing the record and every
+ * one after it.
+ */
+class FatalLoadException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param message Message of the failure
+	 */
+	FatalLoadException(String message) {
+		super(message);
+	}
+}
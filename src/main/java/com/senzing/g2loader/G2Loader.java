@@ -7,24 +7,47 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
 import org.apache.commons.io.input.BOMInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.csv.CSVFormat;
 
 import java.io.IOException;
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.StringReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import javax.json.Json;
-import javax.json.JsonObjectBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
 
 import com.senzing.g2loader.config.AppConfiguration;
 import com.senzing.g2loader.config.ConfigKeys;
@@ -32,7 +55,21 @@ import com.senzing.g2loader.config.CommandOptions;
 
 public class G2Loader {
 
+	private static final int DEFAULT_METRICS_INTERVAL_SECONDS = 10;
+	private static final int DEFAULT_ADAPTIVE_THREADS = 32;
+	// Lanes busy for longer than this times the mean are reported
+	private static final double LANE_SKEW_REPORTED = 1.5;
+	private static final int DEFAULT_SERVE_QUEUE_SIZE = 10_000;
+	private static final long SERVE_STOP_MILLIS = 30_000;
+
 	private static Map<String, Object> configValues;
+	private static final String STANDARD_INPUT = "-";
+	private static final int STREAM_BUFFER_SIZE = 256 * 1024;
+
+	private static LoadMetrics metrics;
+	private static DeadLetterWriter deadLetters;
+	private static DeltaIndex deltaIndex;
+	private static AffectedEntitySink affectedEntities;
 
 	public static void main(String[] args) {
 		configValues = new HashMap<>();
@@ -42,7 +79,8 @@ public class G2Loader {
 
 			validateCommandLineParams();
 
-			G2LoaderHandler handler = new G2LoaderHandler();
+			G2LoaderHandler handler = createHandler();
+			configureConfigCache(handler);
 			handler.init(configValues.get(CommandOptions.INI_FILE).toString(),
 					configValues.containsKey(CommandOptions.VERBOSE));
 
@@ -50,22 +88,69 @@ public class G2Loader {
 				System.out.println("Purging repository");
 				handler.purgeRepository();
 			}
-			Object value = configValues.get(CommandOptions.DATA_SOURCE);
-			if (null != value) {
-				System.out.println("Adding dataSource");
-				handler.addDataSource(value.toString());
+			Set<String> dataSources = getDataSources();
+			if (!dataSources.isEmpty()) {
+				System.out.println("Adding dataSources");
+				List<String> added = handler.addDataSources(dataSources);
+				System.out.println(added.isEmpty() ? "All " + dataSources.size() + " data sources exist"
+						: "Added " + String.join(", ", added));
 			}
 
+			Object value;
+
 			value = configValues.get(CommandOptions.DATA_FILE);
-			if (null != value) {
-				System.out.println("Loading dataFile");
-				loadFile(handler, value.toString());
+			Object retryFile = configValues.get(CommandOptions.RETRY_FAILED);
+			if (null != value && null != retryFile) {
+				throw new Exception("-" + CommandOptions.RETRY_FAILED + " cannot be combined with -"
+						+ CommandOptions.DATA_FILE);
+			}
+			Object port = configValues.get(CommandOptions.SERVE);
+			if (null != port && (null != value || null != retryFile)) {
+				throw new Exception("-" + CommandOptions.SERVE + " cannot be combined with -"
+						+ (null != value ? CommandOptions.DATA_FILE : CommandOptions.RETRY_FAILED));
+			}
+			boolean redo = configValues.containsKey(CommandOptions.PROCESS_REDO);
+			if (null != value || null != retryFile || null != port || redo) {
+				startMetrics(handler);
+				startDeadLetters(retryFile);
+				startAffectedEntities(handler);
+				RedoProcessor redoProcessor = null;
+				try {
+					if (redo && configValues.containsKey(CommandOptions.REDO_DURING_LOAD)) {
+						redoProcessor = startRedo(handler);
+					}
+					if (null != port) {
+						serve(handler, port.toString());
+					} else if (null != value || null != retryFile) {
+						loadInput(handler, value, retryFile);
+					}
+					if (redo) {
+						if (redoProcessor == null) {
+							redoProcessor = startRedo(handler);
+						}
+						drainRedo(handler, redoProcessor);
+					}
+				} finally {
+					if (redoProcessor != null) {
+						redoProcessor.stop();
+					}
+					stopAffectedEntities(handler);
+					stopDeadLetters();
+					stopMetrics();
+				}
+				exportAffectedEntities(handler);
 			}
 
 			value = configValues.get(CommandOptions.EXPORT_FILE);
 			if (null != value) {
 				System.out.println("Exporting");
-				handler.exportToFile(value.toString());
+				if (configValues.containsKey(CommandOptions.EXPORT_SHARD_SIZE)) {
+					int shards = handler.exportToFile(value.toString(), getIntValue(CommandOptions.EXPORT_SHARD_SIZE, 1),
+							getIntValue(CommandOptions.EXPORT_THREADS, Runtime.getRuntime().availableProcessors()));
+					System.out.println("Exported " + shards + " shards");
+				} else {
+					handler.exportToFile(value.toString());
+				}
 			}
 
 			value = configValues.get(CommandOptions.STATS_FILE);
@@ -87,93 +172,1050 @@ public class G2Loader {
 
 	}
 
-	private static boolean isJsonFile(String dataFile) throws Exception {
-
-		try (FileInputStream input = new FileInputStream(dataFile);
-				BufferedReader reader = new BufferedReader(new InputStreamReader(input));) {
-			String line = reader.readLine();
-			Json.createReader(new StringReader(line)).readObject();
-			return true;
-		} catch (Exception e) {
+	/**
+	 * Creates the handler named by the {@value WorkerPool#HANDLER_PROPERTY}
+	 * system property, the standard one by default.
+	 * 
+	 * @return The handler, not initialized
+	 * 
+	 * @throws Exception if the class cannot be created
+	 */
+	private static G2LoaderHandler createHandler() throws Exception {
+		String className = System.getProperty(WorkerPool.HANDLER_PROPERTY);
+		if (className == null) {
+			return new G2LoaderHandler();
 		}
+		return Class.forName(className).asSubclass(G2LoaderHandler.class).getDeclaredConstructor().newInstance();
+	}
 
-		return false;
+	/**
+	 * Places the configuration cache of the handler, or turns it off.
+	 * 
+	 * @throws Exception if both are asked for
+	 */
+	private static void configureConfigCache(G2LoaderHandler handler) throws Exception {
+		Object value = configValues.get(CommandOptions.CONFIG_CACHE);
+		if (configValues.containsKey(CommandOptions.NO_CONFIG_CACHE)) {
+			if (null != value) {
+				throw new Exception("-" + CommandOptions.CONFIG_CACHE + " cannot be combined with -"
+						+ CommandOptions.NO_CONFIG_CACHE);
+			}
+			handler.disableConfigCache();
+		} else if (null != value) {
+			handler.setConfigCacheFile(Paths.get(value.toString()));
+		}
 	}
 
-	private static void loadFile(G2LoaderHandler handler, String dataFile) throws Exception {
-		if (isJsonFile(dataFile)) {
-			loadJsonFile(handler, dataFile);
-		} else {
-			loadCsvFile(handler, dataFile);
+	private static void loadInput(G2LoaderHandler handler, Object dataFile, Object retryFile) throws Exception {
+		boolean completed = false;
+		WorkerPool workers = startWorkers();
+		try {
+			openDeltaIndex(retryFile);
+			G2LoaderHandler loadHandler = workers != null ? workers : handler;
+			try {
+				if (null != retryFile) {
+					System.out.println("Loading failed records");
+					loadDeadLetterFile(loadHandler, retryFile.toString());
+				} else {
+					System.out.println("Loading dataFile");
+					loadFile(loadHandler, dataFile.toString());
+				}
+			} catch (Exception e) {
+				if (workers == null) {
+					throw e;
+				}
+				// The workers still load the records handed to them
+				try {
+					workers.finish();
+				} catch (Exception workerError) {
+					e.addSuppressed(workerError);
+				}
+				throw e;
+			}
+			if (workers != null) {
+				workers.finish();
+			}
+			completed = true;
+		} finally {
+			if (workers != null) {
+				workers.stop();
+			}
+			closeDeltaIndex(completed);
 		}
 	}
 
-	private static void loadJsonFile(G2LoaderHandler handler, String dataFile) throws Exception {
-		long start = System.currentTimeMillis();
+	/**
+	 * Loads the records pushed over HTTP until the process is asked to stop, e.g.
+	 * with Ctrl-C. The requests accepted are then answered before the load ends.
+	 * 
+	 * @param handler Handler the records are loaded through
+	 * @param port    Port to listen on
+	 * 
+	 * @throws Exception
+	 */
+	private static void serve(G2LoaderHandler handler, String port) throws Exception {
+		// The process ends shortly after Ctrl-C, too soon for the long steps after a load
+		for (String option : new String[] { CommandOptions.WORKERS, CommandOptions.CHECKPOINT_FILE,
+				CommandOptions.RESUME, CommandOptions.DELTA_DELETES, CommandOptions.DEDUP, CommandOptions.PROCESS_REDO,
+				CommandOptions.DELTA_EXPORT_FILE, CommandOptions.EXPORT_FILE, CommandOptions.STATS_FILE }) {
+			if (configValues.containsKey(option)) {
+				throw new Exception("-" + option + " cannot be combined with -" + CommandOptions.SERVE);
+			}
+		}
+		int portNumber;
+		try {
+			portNumber = Integer.parseInt(port);
+		} catch (NumberFormatException e) {
+			throw new Exception("Invalid value for -" + CommandOptions.SERVE + ": " + port);
+		}
 
-		final AtomicInteger total = new AtomicInteger(0);
-		final AtomicInteger failed = new AtomicInteger(0);
+		boolean completed = false;
+		try {
+			openDeltaIndex(null);
+			RecordLoader loader = createLoader(handler);
+			loader.start();
+			LoadServer server = new LoadServer(loader, portNumber,
+					getIntValue(CommandOptions.SERVE_QUEUE_SIZE, DEFAULT_SERVE_QUEUE_SIZE));
+			CountDownLatch stopRequested = new CountDownLatch(1);
+			Thread mainThread = Thread.currentThread();
+			Thread shutdownHook = new Thread(() -> {
+				stopRequested.countDown();
+				try {
+					// Lets the load end before the process does
+					mainThread.join(2 * SERVE_STOP_MILLIS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}, "g2loader-serve-shutdown");
+			Runtime.getRuntime().addShutdownHook(shutdownHook);
+			long start = System.currentTimeMillis();
+			try {
+				server.start();
+				System.out.println("Loading records sent to http://localhost:" + server.getPort()
+						+ LoadServer.RECORDS_PATH + ", stop with Ctrl-C");
+				stopRequested.await();
+				System.out.println("Stopping");
+				server.stop(SERVE_STOP_MILLIS);
+			} finally {
+				if (stopRequested.getCount() > 0) {
+					// Failed to start, the process ends on its own
+					Runtime.getRuntime().removeShutdownHook(shutdownHook);
+				}
+				loader.finish();
+			}
+			System.out.println("Served " + server.getAccepted() + " requests in " + server.getBatches()
+					+ " batches, rejected " + server.getRejected() + " requests. Loaded " + server.getLoaded()
+					+ " records with " + server.getFailed() + " failures. Took "
+					+ (System.currentTimeMillis() - start) + "ms");
+			completed = true;
+		} finally {
+			closeDeltaIndex(completed);
+		}
+	}
 
-		try (FileInputStream input = new FileInputStream(dataFile);
-				Stream<String> lines = new BufferedReader(new InputStreamReader(input)).lines()) {
-			lines.forEach(line -> {
+	/**
+	 * Starts the worker processes the records are loaded through when -workers
+	 * was given. The workers load with the threads, retries and failure limit of
+	 * the command line, the coordinator reads the input and hands them the records.
+	 * 
+	 * @return The started workers, or null
+	 * 
+	 * @throws Exception
+	 */
+	private static WorkerPool startWorkers() throws Exception {
+		if (!configValues.containsKey(CommandOptions.WORKERS)) {
+			return null;
+		}
+		for (String option : new String[] { CommandOptions.CHECKPOINT_FILE, CommandOptions.RESUME,
+				CommandOptions.DELTA_INDEX, CommandOptions.AFFECTED_ENTITIES_FILE, CommandOptions.DELTA_EXPORT_FILE }) {
+			if (configValues.containsKey(option)) {
+				throw new Exception("-" + option + " cannot be combined with -" + CommandOptions.WORKERS);
+			}
+		}
+		List<String> arguments = new ArrayList<>();
+		for (String option : new String[] { CommandOptions.INI_FILE, CommandOptions.CONFIG_CACHE,
+				CommandOptions.NO_CONFIG_CACHE, CommandOptions.VERBOSE, CommandOptions.THREADS,
+				CommandOptions.ADAPTIVE, CommandOptions.AFFINITY, CommandOptions.AFFINITY_KEY, CommandOptions.MAX_FAILURES,
+				CommandOptions.RETRIES, CommandOptions.RETRY_ERROR_CODES, CommandOptions.METRICS_INTERVAL }) {
+			if (configValues.containsKey(option)) {
+				arguments.add("-" + option);
+				Object value = configValues.get(option);
+				if (value != null && !CommandOptions.VERBOSE.equals(option)) {
+					arguments.add(value.toString());
+				}
+			}
+		}
+		Object metricsFile = configValues.get(CommandOptions.METRICS_FILE);
+		Object deadLetterFile = configValues.get(CommandOptions.DEAD_LETTER_FILE);
+		int size = getIntValue(CommandOptions.WORKERS, 1);
+		WorkerPool workers = new WorkerPool(size, arguments,
+				metricsFile != null ? Paths.get(metricsFile.toString()) : null,
+				deadLetterFile != null ? Paths.get(deadLetterFile.toString()) : null);
+		workers.setAffinityKey(getAffinityKey());
+		System.out.println("Starting " + size + " workers");
+		workers.start();
+		return workers;
+	}
+
+	/**
+	 * Starts processing the redo queue, with the load when asked to.
+	 * 
+	 * @param handler Handler the redo records are processed through
+	 * @return The started processor
+	 * 
+	 * @throws Exception
+	 */
+	private static RedoProcessor startRedo(G2LoaderHandler handler) throws Exception {
+		RedoProcessor redoProcessor = new RedoProcessor(handler,
+				getIntValue(CommandOptions.REDO_THREADS, getThreadCount()));
+		if (metrics != null) {
+			metrics.setRedoBacklog(() -> {
 				try {
-					total.incrementAndGet();
-					handler.addRecord(line);
+					return handler.countRedoRecords();
 				} catch (Exception e) {
-					System.err.println("FAILED: [" + e.getMessage() + "] " + line);
-					failed.incrementAndGet();
+					return -1;
 				}
 			});
+			redoProcessor.setMetrics(metrics);
+		}
+		System.out.println("Processing redo records");
+		redoProcessor.start();
+		return redoProcessor;
+	}
+
+	/**
+	 * Processes the redo records left after the load until the queue is empty or
+	 * the time budget of -redoSeconds has run out.
+	 * 
+	 * @throws Exception
+	 */
+	private static void drainRedo(G2LoaderHandler handler, RedoProcessor redoProcessor) throws Exception {
+		int budgetSeconds = getIntValue(CommandOptions.REDO_SECONDS, 0);
+		boolean drained = redoProcessor.drain(budgetSeconds * 1000L);
+		long took = redoProcessor.getElapsedMillis();
+		long processed = redoProcessor.getProcessed();
+		System.out.println("Processed " + processed + " redo records with " + redoProcessor.getFailed()
+				+ " failures. Took " + took + "ms, " + (took > 0 ? processed * 1000 / took : processed)
+				+ " per second");
+		if (!drained) {
+			System.out.println("Redo time budget of " + budgetSeconds + " seconds ran out, "
+					+ handler.countRedoRecords() + " redo records remain");
 		}
-		long took = System.currentTimeMillis() - start;
-		String msg = "Parsed " + total.get() + " lines with " + failed.get() + " failures. Took " + took + "ms";
-		System.out.println(msg);
-		if (failed.get() > 0)
-			throw new Exception(msg);
 	}
 
-	private static String CSVtoJson(CSVRecord record, List<String> headers) {
-		JsonObjectBuilder jsonRec = Json.createObjectBuilder();
+	/**
+	 * Loads a data file with the given options instead of the ones of the command
+	 * line, e.g. to exercise the loading pipeline with a stub engine.
+	 * 
+	 * @param handler  Handler the records are loaded through
+	 * @param dataFile CSV or JSON data file
+	 * @param options  Option values keyed by {@link CommandOptions} name
+	 * 
+	 * @throws Exception
+	 */
+	static void loadFile(G2LoaderHandler handler, String dataFile, Map<String, Object> options) throws Exception {
+		configValues = new HashMap<>(options);
+		loadFile(handler, dataFile);
+	}
 
-		int i = 0;
-		for (String key : headers) {
-			jsonRec.add(key, record.get(i));
+	private static void loadFile(G2LoaderHandler handler, String dataFile) throws Exception {
+		loadFiles(handler, expandDataFiles(dataFile));
+	}
 
-			i++;
+	/**
+	 * Loads data files through one loader. The files are read in parallel, up to
+	 * one per loading thread and the largest first, and share the loading threads,
+	 * so a small file does not leave threads idle while a large one is loaded.
+	 * 
+	 * @param handler Handler the records are loaded through
+	 * @param files   Data files
+	 * 
+	 * @throws Exception
+	 */
+	private static void loadFiles(G2LoaderHandler handler, List<Path> files) throws Exception {
+		long start = System.currentTimeMillis();
+		if (files.size() > 1 && (configValues.containsKey(CommandOptions.CHECKPOINT_FILE)
+				|| configValues.containsKey(CommandOptions.RESUME))) {
+			throw new Exception("Checkpoints cannot be combined with several data files");
 		}
 
-		return jsonRec.build().toString();
+		RecordLoader loader = createLoader(handler);
+		loader.start();
+		List<LoadStats> stats = new ArrayList<>();
+		for (Path file : files) {
+			stats.add(new LoadStats(file.toString()));
+		}
+		List<LoadCheckpoint> checkpoints = Collections.synchronizedList(new ArrayList<>());
+		int readers = Math.min(files.size(), loader.getThreads());
+		try {
+			if (readers <= 1) {
+				for (int i = 0; i < files.size(); i++) {
+					readFile(loader, files.get(i), stats.get(i), checkpoints);
+				}
+			} else {
+				readFiles(loader, files, stats, checkpoints, readers);
+			}
+		} finally {
+			loader.finish();
+			for (LoadCheckpoint checkpoint : checkpoints) {
+				checkpoint.close();
+			}
+		}
+		if (deltaIndex != null && !loader.isAborted()) {
+			// Every record of the input has been seen, the ones left unseen are gone
+			int failures = deltaIndex.deleteMissing(handler);
+			if (failures > 0) {
+				throw new Exception("Failed to delete " + failures + " records missing from the input");
+			}
+		}
+		reportLoad(loader, stats, start);
+	}
+
+	private static void readFiles(RecordLoader loader, List<Path> files, List<LoadStats> stats,
+			List<LoadCheckpoint> checkpoints, int readers) throws Exception {
+		AtomicInteger readerNumber = new AtomicInteger(0);
+		ExecutorService pool = Executors.newFixedThreadPool(readers,
+				r -> new Thread(r, "g2loader-reader-" + readerNumber.incrementAndGet()));
+		List<Future<?>> results = new ArrayList<>();
+		for (int i = 0; i < files.size(); i++) {
+			Path file = files.get(i);
+			LoadStats fileStats = stats.get(i);
+			results.add(pool.submit(() -> {
+				readFile(loader, file, fileStats, checkpoints);
+				return null;
+			}));
+		}
+		pool.shutdown();
 
+		Exception failure = null;
+		for (int i = 0; i < results.size(); i++) {
+			try {
+				results.get(i).get();
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = new Exception("Failed to load " + files.get(i) + ": " + e.getCause().getMessage(),
+							e.getCause());
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
 	}
 
-	private static void loadCsvFile(G2LoaderHandler handler, String dataFile) throws Exception {
+	private static void readFile(RecordLoader loader, Path file, LoadStats stats, List<LoadCheckpoint> checkpoints)
+			throws Exception {
 		long start = System.currentTimeMillis();
+		if (isStream(file)) {
+			readStream(loader, file, stats);
+		} else {
+			if (configValues.containsKey(CommandOptions.DEDUP)) {
+				// A first pass over the keys, so only the last version of a record is loaded
+				stats.setSuperseded(RecordDeduplicator.findSuperseded(file));
+			}
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				readChannel(loader, file, channel, stats, checkpoints);
+			}
+		}
+		stats.setReadMillis(System.currentTimeMillis() - start);
+	}
 
-		final AtomicInteger total = new AtomicInteger(0);
-		final AtomicInteger failed = new AtomicInteger(0);
+	/**
+	 * Reads a data file, which is opened once. Its compression and format are
+	 * detected on the start of its content stream, which CSV and JSON arrays are
+	 * then read from. Uncompressed JSON lines are mapped from the same channel.
+	 * 
+	 * @param loader      Loader the records are handed to
+	 * @param file        File being read
+	 * @param channel     Open channel of the file
+	 * @param stats       Counts of the file
+	 * @param checkpoints Checkpoints of the load, the one of the file is added
+	 * 
+	 * @throws Exception
+	 */
+	private static void readChannel(RecordLoader loader, Path file, FileChannel channel, LoadStats stats,
+			List<LoadCheckpoint> checkpoints) throws Exception {
+		boolean compressed = CompressedInput.detect(channel) != CompressedInput.Compression.NONE;
+		try (BufferedInputStream content = new BufferedInputStream(
+				CompressedInput.open(new CloseShieldInputStream(Channels.newInputStream(channel))),
+				STREAM_BUFFER_SIZE)) {
+			switch (InputFormat.detect(content)) {
+			case JSON_LINES:
+				readJsonFile(loader, file, channel, compressed ? content : null, stats, checkpoints);
+				break;
+			case JSON_ARRAY:
+				readJsonArrayFile(loader, file, content, stats, checkpoints);
+				break;
+			default:
+				readCsvFile(loader, file, content, stats, checkpoints);
+			}
+		}
+	}
 
-		try (InputStreamReader reader = new InputStreamReader(new BOMInputStream(new FileInputStream(dataFile)),
-				"UTF-8"); CSVParser parser = new CSVParser(reader, CSVFormat.EXCEL.withHeader());) {
-			List<String> headers = parser.getHeaderNames();
-			for (final CSVRecord record : parser) {
-				String line = CSVtoJson(record, headers);
+	/**
+	 * Reads standard input or a named pipe. The stream is read once: its
+	 * compression and format are detected from its first bytes, which are kept
+	 * for reading the records.
+	 * 
+	 * @param loader Loader the records are handed to
+	 * @param file   "-" for standard input, or the pipe
+	 * @param stats  Counts of the input
+	 * 
+	 * @throws Exception
+	 */
+	private static void readStream(RecordLoader loader, Path file, LoadStats stats) throws Exception {
+		if (configValues.containsKey(CommandOptions.CHECKPOINT_FILE)
+				|| configValues.containsKey(CommandOptions.RESUME)) {
+			throw new Exception("Checkpoints cannot be used when reading " + describe(file));
+		}
+		if (configValues.containsKey(CommandOptions.DEDUP)) {
+			throw new Exception("-" + CommandOptions.DEDUP + " cannot be used when reading " + describe(file));
+		}
+		// A channel stream would query the position of the pipe, which it does not have
+		InputStream stream = STANDARD_INPUT.equals(file.toString()) ? System.in : new FileInputStream(file.toFile());
+		try (BufferedInputStream input = new BufferedInputStream(CompressedInput.open(stream), STREAM_BUFFER_SIZE)) {
+			switch (InputFormat.detect(input)) {
+			case JSON_LINES:
+				readLines(loader, stats, new StreamLineReader(input), 0);
+				break;
+			case JSON_ARRAY:
+				readJsonArray(loader, stats, input, 0);
+				break;
+			default:
+				readCsv(loader, stats, new CountingReader(openTextReader(input)), CSVFormat.EXCEL.withHeader(), 0,
+						1);
+			}
+		}
+	}
+
+	private static String describe(Path file) {
+		return STANDARD_INPUT.equals(file.toString()) ? "standard input" : "pipe " + file;
+	}
+
+	/**
+	 * Expands the -dataFile value to the files it names: a comma separated list of
+	 * files, directories whose files are all loaded, or globs like data/*.json.gz
+	 * matching file names.
+	 * 
+	 * @param dataFile Value of -dataFile
+	 * @return The files, largest first
+	 * 
+	 * @throws Exception if a name matches no file
+	 */
+	static List<Path> expandDataFiles(String dataFile) throws Exception {
+		List<Path> files = new ArrayList<>();
+		for (String name : dataFile.split(",")) {
+			name = name.trim();
+			if (name.isEmpty()) {
+				continue;
+			}
+			List<Path> matched = new ArrayList<>();
+			Path path = Paths.get(name);
+			if (Files.isDirectory(path)) {
+				try (Stream<Path> listing = Files.list(path)) {
+					listing.filter(G2Loader::isDataFile).forEach(matched::add);
+				}
+			} else if (name.matches(".*[*?\\[{].*")) {
+				Path directory = path.getParent() != null ? path.getParent() : Paths.get(".");
+				PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.getFileName());
+				try (Stream<Path> listing = Files.list(directory)) {
+					listing.filter(file -> matcher.matches(file.getFileName()) && isDataFile(file))
+							.forEach(matched::add);
+				}
+			} else if (STANDARD_INPUT.equals(name) || Files.isRegularFile(path) || isPipe(path)) {
+				matched.add(path);
+			}
+			if (matched.isEmpty()) {
+				throw new Exception("No data file found for " + name);
+			}
+			files.addAll(matched);
+		}
+		if (files.isEmpty()) {
+			throw new Exception("No data file given");
+		}
+		Map<Path, Long> sizes = new HashMap<>();
+		for (Path file : files) {
+			sizes.put(file, isStream(file) ? 0 : Files.size(file));
+		}
+		files.sort(Comparator.comparing((Path file) -> sizes.get(file)).reversed().thenComparing(Path::toString));
+		return files;
+	}
+
+	/**
+	 * Collects the data sources to register: the ones listed with -dataSource and
+	 * with -scanDataSources the ones found in the data files.
+	 * 
+	 * @return The data sources, sorted
+	 * 
+	 * @throws Exception
+	 */
+	private static Set<String> getDataSources() throws Exception {
+		Set<String> dataSources = new TreeSet<>();
+		Object value = configValues.get(CommandOptions.DATA_SOURCE);
+		if (null != value) {
+			for (String dataSource : value.toString().split(",")) {
+				if (!dataSource.trim().isEmpty()) {
+					dataSources.add(dataSource.trim());
+				}
+			}
+		}
+		if (configValues.containsKey(CommandOptions.SCAN_DATA_SOURCES)) {
+			value = configValues.get(CommandOptions.DATA_FILE);
+			if (null == value) {
+				throw new Exception("-" + CommandOptions.SCAN_DATA_SOURCES + " needs -" + CommandOptions.DATA_FILE);
+			}
+			System.out.println("Scanning dataFile for data sources");
+			dataSources.addAll(KeyScanner.scanDataSources(expandDataFiles(value.toString())));
+		}
+		return dataSources;
+	}
+
+	/**
+	 * @return Whether the input can only be read once from its start: standard
+	 *         input or a named pipe
+	 */
+	private static boolean isStream(Path file) {
+		return STANDARD_INPUT.equals(file.toString()) || isPipe(file);
+	}
+
+	private static boolean isPipe(Path file) {
+		return Files.exists(file) && !Files.isDirectory(file) && !Files.isRegularFile(file);
+	}
+
+	private static boolean isDataFile(Path file) {
+		String name = file.getFileName().toString();
+		return Files.isRegularFile(file) && !name.startsWith(".") && !name.endsWith(".checkpoint");
+	}
+
+	/**
+	 * Reads a JSON lines file.
+	 * 
+	 * @param content Decompressed content of a compressed file at its start, null
+	 *                for a plain file that is mapped from the channel
+	 */
+	private static void readJsonFile(RecordLoader loader, Path file, FileChannel channel, InputStream content,
+			LoadStats stats, List<LoadCheckpoint> checkpoints) throws Exception {
+		LoadCheckpoint checkpoint = openCheckpoint(file.toString(), "json", 0);
+		if (checkpoint != null) {
+			loader.setCheckpoint(checkpoint);
+			checkpoints.add(checkpoint);
+		}
+		boolean compressed = content != null;
+		int splits = getIntValue(CommandOptions.SPLITS, 1);
+		if (splits > 1 && compressed) {
+			System.out.println("Compressed files are read in one part");
+			splits = 1;
+		}
+		if (splits > 1) {
+			new SplitFileLoader(loader, file, splits, stats).load();
+		} else {
+			long position = checkpoint != null ? checkpoint.getPosition() : 0;
+			LineReader reader = compressed ? new StreamLineReader(content, position)
+					: new MappedLineReader(channel, position, Long.MAX_VALUE, MappedLineReader.DEFAULT_WINDOW_SIZE);
+			readLines(loader, stats, reader, checkpoint != null ? checkpoint.getLine() : 0);
+		}
+	}
+
+	private static void readJsonArrayFile(RecordLoader loader, Path file, InputStream content, LoadStats stats,
+			List<LoadCheckpoint> checkpoints) throws Exception {
+		LoadCheckpoint checkpoint = openCheckpoint(file.toString(), "jsonArray", 0);
+		if (checkpoint != null) {
+			loader.setCheckpoint(checkpoint);
+			checkpoints.add(checkpoint);
+		}
+		readJsonArray(loader, stats, content, checkpoint != null ? checkpoint.getLine() : 0);
+	}
+
+	/**
+	 * Hands every element of a JSON array input to the loader. The array is parsed
+	 * as a stream, so only one element is held at a time. Elements are numbered
+	 * from 1 in place of lines.
+	 * 
+	 * @param loader Loader the records are handed to
+	 * @param stats  Counts of the input
+	 * @param input  Uncompressed input at its start
+	 * @param skip   Number of elements loaded before, which are parsed but not
+	 *               loaded again
+	 * 
+	 * @throws Exception
+	 */
+	private static void readJsonArray(RecordLoader loader, LoadStats stats, InputStream input, long skip)
+			throws Exception {
+		try (JsonParser parser = Json.createParser(openTextReader(input))) {
+			if (!parser.hasNext() || parser.next() != JsonParser.Event.START_ARRAY) {
+				throw new Exception("Input is not a JSON array");
+			}
+			long number = 0;
+			while (parser.next() != JsonParser.Event.END_ARRAY) {
+				JsonValue element = parser.getValue();
+				if (++number <= skip) {
+					continue;
+				}
+				if (element.getValueType() == JsonValue.ValueType.OBJECT) {
+					RecordKeys keys = RecordKeys.fromObject(element.asJsonObject());
+					loader.submit(stats, number, number, keys.dataSource, keys.recordID, element.toString());
+				} else {
+					loader.submit(stats, number, number, element.toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hands every line of a JSON lines input to the loader and closes the reader.
+	 */
+	private static void readLines(RecordLoader loader, LoadStats stats, LineReader reader, long lineNumber)
+			throws Exception {
+		try (LineReader lines = reader) {
+			String line;
+			while ((line = lines.readLine()) != null) {
+				loader.submit(stats, ++lineNumber, lines.getPosition(), line);
+			}
+		}
+	}
+
+	private static LineReader openLineReader(Path file, boolean compressed, long position) throws IOException {
+		return compressed ? new StreamLineReader(CompressedInput.open(file), position)
+				: new MappedLineReader(file, position, Long.MAX_VALUE, MappedLineReader.DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Loads the records of a dead-letter file written by an earlier load.
+	 * 
+	 * @param handler        Handler the records are loaded through
+	 * @param deadLetterFile Dead-letter file
+	 * 
+	 * @throws Exception
+	 */
+	private static void loadDeadLetterFile(G2LoaderHandler handler, String deadLetterFile) throws Exception {
+		long start = System.currentTimeMillis();
+
+		RecordLoader loader = createLoader(handler);
+		loader.start();
+		Path file = Paths.get(deadLetterFile);
+		LoadStats stats = new LoadStats(deadLetterFile);
+		boolean compressed = CompressedInput.detect(file) != CompressedInput.Compression.NONE;
+		try (LineReader reader = openLineReader(file, compressed, 0)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				JsonObject deadLetter = DeadLetterWriter.read(line);
+				loader.submit(stats, deadLetter.getJsonNumber(DeadLetterWriter.LINE).longValue(),
+						reader.getPosition(), deadLetter.getString(DeadLetterWriter.RECORD));
+			}
+		} finally {
+			loader.finish();
+		}
+		reportLoad(loader, Collections.singletonList(stats), start);
+	}
+
+	/**
+	 * Creates a loader with the threads, failure handling and metrics of the
+	 * command line.
+	 * 
+	 * @param handler Handler the records are loaded through
+	 * @return The loader, not started
+	 * 
+	 * @throws Exception
+	 */
+	private static RecordLoader createLoader(G2LoaderHandler handler) throws Exception {
+		RecordLoader loader;
+		if (configValues.containsKey(CommandOptions.ADAPTIVE)) {
+			int maxThreads = getIntValue(CommandOptions.THREADS, DEFAULT_ADAPTIVE_THREADS);
+			loader = new RecordLoader(handler, maxThreads);
+			ConcurrencyLimiter limiter = new ConcurrencyLimiter(
+					Math.min(maxThreads, Runtime.getRuntime().availableProcessors()), maxThreads);
+			loader.setLimiter(limiter);
+			if (metrics != null) {
+				metrics.setConcurrencyLimit(limiter::getLimit);
+			}
+		} else {
+			loader = new RecordLoader(handler, getThreadCount());
+		}
+		loader.setAffinityKey(getAffinityKey());
+		loader.setMetrics(metrics);
+		loader.setDeadLetters(deadLetters);
+		loader.setDeltaIndex(deltaIndex);
+		loader.setMaxFailures(getIntValue(CommandOptions.MAX_FAILURES, 0));
+		Set<Integer> errorCodes = new HashSet<>();
+		Object value = configValues.get(CommandOptions.RETRY_ERROR_CODES);
+		if (value != null) {
+			for (String code : value.toString().split(",")) {
 				try {
-					total.incrementAndGet();
-					handler.addRecord(line);
-				} catch (Exception e) {
-					System.err.println("FAILED: [" + e.getMessage() + "] " + line);
-					failed.incrementAndGet();
+					errorCodes.add(Integer.parseInt(code.trim()));
+				} catch (NumberFormatException e) {
+					throw new Exception("Invalid value for -" + CommandOptions.RETRY_ERROR_CODES + ": " + value);
 				}
 			}
 		}
+		loader.setRetries(getIntValue(CommandOptions.RETRIES, 0), errorCodes);
+		return loader;
+	}
+
+	/**
+	 * @return The key records are scheduled by with -affinity or -affinityKey, or
+	 *         null
+	 */
+	private static AffinityKey getAffinityKey() {
+		Object value = configValues.get(CommandOptions.AFFINITY_KEY);
+		if (value != null) {
+			List<String> attributes = new ArrayList<>();
+			for (String attribute : value.toString().split(",")) {
+				if (!attribute.trim().isEmpty()) {
+					attributes.add(attribute.trim());
+				}
+			}
+			return new AffinityKey(attributes);
+		}
+		if (configValues.containsKey(CommandOptions.AFFINITY)) {
+			return new AffinityKey(AffinityKey.RECORD_KEYS);
+		}
+		return null;
+	}
+
+	/**
+	 * Prints how evenly the records were spread over the lanes, with the lanes
+	 * that were busy for much longer than the others and the key that came up
+	 * most in them.
+	 */
+	private static void reportLanes(List<LaneStats> lanes) {
+		long records = 0;
+		long busyNanos = 0;
+		long maxBusyNanos = 0;
+		for (LaneStats lane : lanes) {
+			records += lane.getRecords();
+			busyNanos += lane.getBusyNanos();
+			maxBusyNanos = Math.max(maxBusyNanos, lane.getBusyNanos());
+		}
+		double meanBusyNanos = (double) busyNanos / lanes.size();
+		System.out.println(String.format("Lanes: %d, %d records, skew %.2f (busiest lane over mean)", lanes.size(),
+				records, meanBusyNanos > 0 ? maxBusyNanos / meanBusyNanos : 1.0));
+		for (LaneStats lane : lanes) {
+			if (lane.getBusyNanos() > LANE_SKEW_REPORTED * meanBusyNanos) {
+				System.out.println(String.format("Lane %d: %d records, busy %dms, %.2f over mean, hot key %s (%d+ records)",
+						lane.getLane(), lane.getRecords(), lane.getBusyNanos() / 1_000_000,
+						lane.getBusyNanos() / meanBusyNanos, lane.getHotKey(), lane.getHotKeyCount()));
+			}
+		}
+	}
+
+	private static void reportLoad(RecordLoader loader, List<LoadStats> stats, long start) throws Exception {
+		long skipped = 0;
+		for (LoadStats fileStats : stats) {
+			skipped += fileStats.getSkipped();
+			if (stats.size() > 1) {
+				System.out.println(fileStats.getName() + ": " + describeCounts(fileStats.getTotal() + fileStats.getSkipped(),
+						fileStats.getTotal(), fileStats.getFailed()) + ". Read in " + fileStats.getReadMillis() + "ms");
+			}
+		}
+		if (configValues.containsKey(CommandOptions.DEDUP)) {
+			System.out.println(
+					"Skipped " + skipped + " records repeated later in their file, saving as many engine calls");
+		}
 		long took = System.currentTimeMillis() - start;
-		String msg = "Parsed " + total.get() + " lines with " + failed.get() + " failures. Took " + took + "ms";
+		String msg = describeCounts(loader.getTotal() + skipped, loader.getTotal(), loader.getFailed());
+		msg = Character.toUpperCase(msg.charAt(0)) + msg.substring(1) + ". Took " + took + "ms";
+		if (loader.getFailed() > 0 && deadLetters != null) {
+			msg += ". Failed records are in " + deadLetters.getFile();
+		}
+		if (deltaIndex != null) {
+			System.out.println("Skipped " + deltaIndex.getUnchanged() + " unchanged records, deleted "
+					+ deltaIndex.getDeleted() + " records missing from the input");
+		}
+		if (loader.getLaneStats() != null) {
+			reportLanes(loader.getLaneStats());
+		}
+		ConcurrencyLimiter limiter = loader.getLimiter();
+		if (limiter != null) {
+			System.out.println("Adaptive concurrency settled at " + limiter.getSettledLimit()
+					+ " engine calls in flight, at most " + limiter.getMaxLimit());
+		}
 		System.out.println(msg);
-		if (failed.get() > 0)
+		if (loader.getAbortCause() != null)
+			throw new Exception(loader.getAbortMessage(), loader.getAbortCause());
+		if (loader.getFailed() > 0)
 			throw new Exception(msg);
 	}
 
+	/**
+	 * Describes the counts of a load. The lines read are told apart from the
+	 * records loaded when superseded records were skipped.
+	 * 
+	 * @param lines   Lines read
+	 * @param records Records handed to the loading threads
+	 * @param failed  Records that failed
+	 * @return The counts, starting in lower case
+	 */
+	private static String describeCounts(long lines, long records, long failed) {
+		if (lines == records) {
+			return "parsed " + lines + " lines with " + failed + " failures";
+		}
+		return "read " + lines + " lines and loaded " + records + " records with " + failed + " failures";
+	}
+
+	private static void readCsvFile(RecordLoader loader, Path file, BufferedInputStream content, LoadStats stats,
+			List<LoadCheckpoint> checkpoints) throws Exception {
+		String dataFile = file.toString();
+		// The header is line 1
+		LoadCheckpoint checkpoint = openCheckpoint(dataFile, "csv", 1);
+		if (checkpoint != null) {
+			loader.setCheckpoint(checkpoint);
+			checkpoints.add(checkpoint);
+		}
+
+		long position = checkpoint != null ? checkpoint.getPosition() : 0;
+		CSVFormat format = CSVFormat.EXCEL.withHeader();
+		if (position > 0) {
+			// Resuming past the header, read it ahead and go back to the start
+			content.mark(InputFormat.SNIFF_SIZE);
+			try (CSVParser parser = new CSVParser(openTextReader(new CloseShieldInputStream(content)),
+					CSVFormat.EXCEL.withHeader())) {
+				format = CSVFormat.EXCEL.withHeader(parser.getHeaderNames().toArray(new String[0]));
+			}
+			content.reset();
+		}
+
+		readCsv(loader, stats, new CountingReader(openTextReader(content)), format, position,
+				checkpoint != null ? checkpoint.getLine() : 1);
+	}
+
+	/**
+	 * Hands every record of a CSV input to the loader and closes the reader.
+	 * 
+	 * @param loader     Loader the records are handed to
+	 * @param stats      Counts of the input
+	 * @param reader     Reader of the input at its start
+	 * @param format     Format of the CSV with its header
+	 * @param position   Number of characters to skip before the first record
+	 * @param lineNumber Line the first record follows
+	 * 
+	 * @throws Exception
+	 */
+	private static void readCsv(RecordLoader loader, LoadStats stats, CountingReader reader, CSVFormat format,
+			long position, long lineNumber) throws Exception {
+		try (CSVParser parser = new CSVParser(reader, format)) {
+			reader.skipFully(position);
+			CsvRecordConverter converter = new CsvRecordConverter(parser.getHeaderNames());
+			// A record is submitted once the next one is read, which is where a resumed
+			// load would continue after it
+			CSVRecord previous = null;
+			for (final CSVRecord record : parser) {
+				if (previous != null) {
+					submitCsvRecord(loader, stats, converter, previous, lineNumber,
+							position + record.getCharacterPosition());
+				}
+				previous = record;
+			}
+			if (previous != null) {
+				submitCsvRecord(loader, stats, converter, previous, lineNumber, reader.getCount());
+			}
+		}
+	}
+
+	/**
+	 * @return Reader of UTF-8 text skipping a leading byte order mark
+	 */
+	private static Reader openTextReader(InputStream input) {
+		return new InputStreamReader(new BOMInputStream(input), StandardCharsets.UTF_8);
+	}
+
+	private static void submitCsvRecord(RecordLoader loader, LoadStats stats, CsvRecordConverter converter,
+			CSVRecord record, long firstLine, long nextPosition) throws Exception {
+		loader.submit(stats, firstLine + record.getRecordNumber(), nextPosition, converter.getDataSource(record),
+				converter.getRecordID(record), converter.toJson(record));
+	}
+
+	/**
+	 * Sets up the checkpoint of a load when checkpointing or resuming was asked
+	 * for.
+	 * 
+	 * @param dataFile  File being loaded
+	 * @param format    Format of the file
+	 * @param firstLine Line a load from the start of the file starts after
+	 * @return The started checkpoint, or null
+	 * 
+	 * @throws Exception
+	 */
+	private static LoadCheckpoint openCheckpoint(String dataFile, String format, long firstLine) throws Exception {
+		boolean resume = configValues.containsKey(CommandOptions.RESUME);
+		Object value = configValues.get(CommandOptions.CHECKPOINT_FILE);
+		if (value == null && !resume) {
+			return null;
+		}
+		if (getIntValue(CommandOptions.SPLITS, 1) > 1) {
+			throw new Exception("-" + CommandOptions.SPLITS + " cannot be combined with checkpoints");
+		}
+
+		Path checkpointFile = Paths.get(value != null ? value.toString() : dataFile + ".checkpoint");
+		String filePath = Paths.get(dataFile).toAbsolutePath().normalize().toString();
+		LoadCheckpoint checkpoint;
+		checkpoint = resume ? LoadCheckpoint.resume(checkpointFile, filePath, format) : null;
+		if (checkpoint != null) {
+			System.out.println("Resuming after line " + checkpoint.getLine());
+		} else {
+			if (resume) {
+				System.out.println("No checkpoint found in " + checkpointFile + ", loading from the start");
+			}
+			checkpoint = new LoadCheckpoint(checkpointFile, filePath, format, firstLine, 0);
+		}
+		checkpoint.setSaveInterval(getIntValue(CommandOptions.CHECKPOINT_INTERVAL, LoadCheckpoint.DEFAULT_SAVE_SECONDS),
+				getIntValue(CommandOptions.CHECKPOINT_RECORDS, LoadCheckpoint.DEFAULT_SAVE_RECORDS));
+		checkpoint.start();
+		return checkpoint;
+	}
+
+	/**
+	 * Starts reporting the metrics of the load when a metrics file was asked for.
+	 * 
+	 * @param handler Handler the records are loaded through
+	 * 
+	 * @throws Exception
+	 */
+	private static void startMetrics(G2LoaderHandler handler) throws Exception {
+		Object value = configValues.get(CommandOptions.METRICS_FILE);
+		if (value == null) {
+			return;
+		}
+		int interval = getIntValue(CommandOptions.METRICS_INTERVAL, DEFAULT_METRICS_INTERVAL_SECONDS);
+		metrics = new LoadMetrics(Paths.get(value.toString()), interval);
+		metrics.start();
+		handler.setMetrics(metrics);
+		metrics.setStartup(handler.getStartupMillis());
+	}
+
+	private static void stopMetrics() throws IOException {
+		if (metrics != null) {
+			metrics.close();
+		}
+	}
+
+	/**
+	 * Starts writing failed records to a dead-letter file when one was asked for.
+	 * 
+	 * @param retryFile Dead-letter file being loaded, or null
+	 * 
+	 * @throws Exception
+	 */
+	private static void startDeadLetters(Object retryFile) throws Exception {
+		Object value = configValues.get(CommandOptions.DEAD_LETTER_FILE);
+		if (value == null) {
+			return;
+		}
+		Path file = Paths.get(value.toString());
+		if (retryFile != null && Files.exists(file) && Files.isSameFile(file, Paths.get(retryFile.toString()))) {
+			throw new Exception("-" + CommandOptions.DEAD_LETTER_FILE + " must differ from the file being retried");
+		}
+		deadLetters = new DeadLetterWriter(file);
+		deadLetters.start();
+	}
+
+	private static void stopDeadLetters() throws Exception {
+		if (deadLetters != null) {
+			deadLetters.close();
+		}
+	}
+
+	/**
+	 * Starts collecting the entities affected by the load when their IDs or a delta
+	 * export were asked for.
+	 * 
+	 * @param handler Handler the records are loaded through
+	 * 
+	 * @throws Exception
+	 */
+	private static void startAffectedEntities(G2LoaderHandler handler) throws Exception {
+		Object value = configValues.get(CommandOptions.AFFECTED_ENTITIES_FILE);
+		if (value == null && !configValues.containsKey(CommandOptions.DELTA_EXPORT_FILE)) {
+			return;
+		}
+		affectedEntities = new AffectedEntitySink(value != null ? Paths.get(value.toString()) : null);
+		affectedEntities.start();
+		handler.setAffectedEntities(affectedEntities);
+	}
+
+	private static void stopAffectedEntities(G2LoaderHandler handler) throws Exception {
+		if (affectedEntities != null) {
+			handler.setAffectedEntities(null);
+			affectedEntities.close();
+			System.out.println(affectedEntities.size() + " entities affected"
+					+ (affectedEntities.getFile() != null ? ", their IDs are in " + affectedEntities.getFile() : ""));
+		}
+	}
+
+	/**
+	 * Exports the entities affected by the load when a delta export was asked for.
+	 * 
+	 * @param handler Handler the entities are exported through
+	 * 
+	 * @throws Exception
+	 */
+	private static void exportAffectedEntities(G2LoaderHandler handler) throws Exception {
+		Object value = configValues.get(CommandOptions.DELTA_EXPORT_FILE);
+		if (value == null) {
+			return;
+		}
+		System.out.println("Exporting affected entities");
+		long start = System.currentTimeMillis();
+		long[] entityIDs = affectedEntities.getEntityIDs();
+		long removed = handler.exportEntitiesToFile(value.toString(), entityIDs,
+				getIntValue(CommandOptions.EXPORT_THREADS, Runtime.getRuntime().availableProcessors()));
+		System.out.println("Exported " + (entityIDs.length - removed) + " entities and " + removed
+				+ " removed entities. Took " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * Opens the index of a delta load when one was asked for.
+	 * 
+	 * @param retryFile Dead-letter file being loaded, whose records are only part of
+	 *                  the input, or null
+	 * 
+	 * @throws Exception
+	 */
+	private static void openDeltaIndex(Object retryFile) throws Exception {
+		Object value = configValues.get(CommandOptions.DELTA_INDEX);
+		boolean deletes = configValues.containsKey(CommandOptions.DELTA_DELETES);
+		if (value == null) {
+			if (deletes) {
+				throw new Exception("-" + CommandOptions.DELTA_DELETES + " needs -" + CommandOptions.DELTA_INDEX);
+			}
+			return;
+		}
+		if (deletes && retryFile != null) {
+			throw new Exception("-" + CommandOptions.DELTA_DELETES + " cannot be combined with -"
+					+ CommandOptions.RETRY_FAILED);
+		}
+		deltaIndex = new DeltaIndex(Paths.get(value.toString()), deletes);
+		deltaIndex.open(configValues.containsKey(CommandOptions.RESUME));
+	}
+
+	private static void closeDeltaIndex(boolean completed) throws Exception {
+		if (deltaIndex != null) {
+			deltaIndex.close(completed);
+		}
+	}
+
+	private static int getThreadCount() throws Exception {
+		return getIntValue(CommandOptions.THREADS, 1);
+	}
+
+	private static int getIntValue(String key, int defaultValue) throws Exception {
+		Object value = configValues.get(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			int intValue = Integer.parseInt(value.toString());
+			if (intValue < 1) {
+				throw new NumberFormatException();
+			}
+			return intValue;
+		} catch (NumberFormatException e) {
+			throw new Exception("Invalid value for -" + key + ": " + value);
+		}
+	}
+
 	private static void processConfiguration() {
 		try {
 			AppConfiguration config = new AppConfiguration();
@@ -190,23 +1232,89 @@ public class G2Loader {
 
 		// Add options.
 		options.addOption(CommandOptions.INI_FILE, true, "Path to the G2 ini file");
-		options.addOption(CommandOptions.DATA_FILE, true, "CSV or JSON data file to load");
+		options.addOption(CommandOptions.CONFIG_CACHE, true, "File to cache the converted ini file in");
+		options.addOption(CommandOptions.NO_CONFIG_CACHE, false, "Do not cache the converted ini file");
+		options.addOption(CommandOptions.DATA_FILE, true, "CSV or JSON data files, directories or globs to load");
 		options.addOption(CommandOptions.EXPORT_FILE, true, "File path for export");
 		options.addOption(CommandOptions.STATS_FILE, true, "File path for statistics");
-		options.addOption(CommandOptions.DATA_SOURCE, true, "Data source for file");
+		options.addOption(CommandOptions.DATA_SOURCE, true, "Comma separated data sources to add");
+		options.addOption(CommandOptions.SCAN_DATA_SOURCES, false, "Add the data sources found in the data files");
+		options.addOption(CommandOptions.DEDUP, false, "Only load the last version of records repeated in a file");
+		options.addOption(CommandOptions.DELTA_INDEX, true, "Index of loaded records, only changed records are loaded");
+		options.addOption(CommandOptions.DELTA_DELETES, false, "Delete the indexed records missing from the input");
+		options.addOption(CommandOptions.PROCESS_REDO, false, "Process the redo records queued by the engine");
+		options.addOption(CommandOptions.REDO_THREADS, true, "Number of threads processing redo records");
+		options.addOption(CommandOptions.REDO_SECONDS, true, "Seconds after the load to stop processing redo records");
+		options.addOption(CommandOptions.REDO_DURING_LOAD, false, "Process redo records while loading");
 		options.addOption(CommandOptions.PURGE, false, "Purge the repository");
 		options.addOption(CommandOptions.VERBOSE, false, "Debug");
+		options.addOption(CommandOptions.THREADS, true, "Number of threads loading records");
+		options.addOption(CommandOptions.WORKERS, true, "Number of worker processes loading records");
+		options.addOption(CommandOptions.SERVE, true, "Port to load the records sent over HTTP from");
+		options.addOption(CommandOptions.SERVE_QUEUE_SIZE, true, "Number of records the server holds at most");
+		options.addOption(CommandOptions.ADAPTIVE, false, "Adapt the number of engine calls in flight, up to -threads");
+		options.addOption(CommandOptions.AFFINITY, false, "Load the records sharing DATA_SOURCE and RECORD_ID in order");
+		options.addOption(CommandOptions.AFFINITY_KEY, true, "Comma separated attributes records are scheduled by");
+		options.addOption(CommandOptions.SPLITS, true, "Number of parts of a JSON file read in parallel");
+		options.addOption(CommandOptions.CHECKPOINT_FILE, true, "File to save the progress of the load to");
+		options.addOption(CommandOptions.RESUME, false, "Resume the load from its checkpoint");
+		options.addOption(CommandOptions.CHECKPOINT_INTERVAL, true, "Seconds between saves of the checkpoint");
+		options.addOption(CommandOptions.CHECKPOINT_RECORDS, true, "Records loaded between saves of the checkpoint");
+		options.addOption(CommandOptions.METRICS_FILE, true, "File to write load metrics to as JSON lines");
+		options.addOption(CommandOptions.METRICS_INTERVAL, true, "Seconds between metrics reports");
+		options.addOption(CommandOptions.DEAD_LETTER_FILE, true, "File to write records that fail to load to");
+		options.addOption(CommandOptions.MAX_FAILURES, true, "Number of failed records after which the load stops");
+		options.addOption(CommandOptions.RETRIES, true, "Number of retries of a record the engine fails on");
+		options.addOption(CommandOptions.RETRY_ERROR_CODES, true, "Comma separated engine error codes to retry");
+		options.addOption(CommandOptions.RETRY_FAILED, true, "Dead-letter file to load the records of");
+		options.addOption(CommandOptions.EXPORT_SHARD_SIZE, true, "Number of entities per export file");
+		options.addOption(CommandOptions.EXPORT_THREADS, true, "Number of threads writing export files");
+		options.addOption(CommandOptions.AFFECTED_ENTITIES_FILE, true, "File to write the IDs of affected entities to");
+		options.addOption(CommandOptions.DELTA_EXPORT_FILE, true, "File path for export of the affected entities");
 
 		CommandLineParser parser = new DefaultParser();
 		CommandLine commandLine = parser.parse(options, args);
 
 		addCommandLineValue(commandLine, CommandOptions.INI_FILE);
+		addCommandLineValue(commandLine, CommandOptions.CONFIG_CACHE);
+		addCommandLineValue(commandLine, CommandOptions.NO_CONFIG_CACHE);
 		addCommandLineValue(commandLine, CommandOptions.DATA_FILE);
 		addCommandLineValue(commandLine, CommandOptions.EXPORT_FILE);
 		addCommandLineValue(commandLine, CommandOptions.STATS_FILE);
 		addCommandLineValue(commandLine, CommandOptions.DATA_SOURCE);
+		addCommandLineValue(commandLine, CommandOptions.SCAN_DATA_SOURCES);
+		addCommandLineValue(commandLine, CommandOptions.DEDUP);
+		addCommandLineValue(commandLine, CommandOptions.DELTA_INDEX);
+		addCommandLineValue(commandLine, CommandOptions.DELTA_DELETES);
+		addCommandLineValue(commandLine, CommandOptions.PROCESS_REDO);
+		addCommandLineValue(commandLine, CommandOptions.REDO_THREADS);
+		addCommandLineValue(commandLine, CommandOptions.REDO_SECONDS);
+		addCommandLineValue(commandLine, CommandOptions.REDO_DURING_LOAD);
 		addCommandLineValue(commandLine, CommandOptions.PURGE);
 		addCommandLineValue(commandLine, CommandOptions.VERBOSE);
+		addCommandLineValue(commandLine, CommandOptions.THREADS);
+		addCommandLineValue(commandLine, CommandOptions.WORKERS);
+		addCommandLineValue(commandLine, CommandOptions.SERVE);
+		addCommandLineValue(commandLine, CommandOptions.SERVE_QUEUE_SIZE);
+		addCommandLineValue(commandLine, CommandOptions.ADAPTIVE);
+		addCommandLineValue(commandLine, CommandOptions.AFFINITY);
+		addCommandLineValue(commandLine, CommandOptions.AFFINITY_KEY);
+		addCommandLineValue(commandLine, CommandOptions.SPLITS);
+		addCommandLineValue(commandLine, CommandOptions.CHECKPOINT_FILE);
+		addCommandLineValue(commandLine, CommandOptions.RESUME);
+		addCommandLineValue(commandLine, CommandOptions.CHECKPOINT_INTERVAL);
+		addCommandLineValue(commandLine, CommandOptions.CHECKPOINT_RECORDS);
+		addCommandLineValue(commandLine, CommandOptions.METRICS_FILE);
+		addCommandLineValue(commandLine, CommandOptions.METRICS_INTERVAL);
+		addCommandLineValue(commandLine, CommandOptions.DEAD_LETTER_FILE);
+		addCommandLineValue(commandLine, CommandOptions.MAX_FAILURES);
+		addCommandLineValue(commandLine, CommandOptions.RETRIES);
+		addCommandLineValue(commandLine, CommandOptions.RETRY_ERROR_CODES);
+		addCommandLineValue(commandLine, CommandOptions.RETRY_FAILED);
+		addCommandLineValue(commandLine, CommandOptions.EXPORT_SHARD_SIZE);
+		addCommandLineValue(commandLine, CommandOptions.EXPORT_THREADS);
+		addCommandLineValue(commandLine, CommandOptions.AFFECTED_ENTITIES_FILE);
+		addCommandLineValue(commandLine, CommandOptions.DELTA_EXPORT_FILE);
 	}
 
 	private static void addCommandLineValue(CommandLine commandLine, String key) {
@@ -239,10 +1347,43 @@ public class G2Loader {
 	private static void helpMessage() {
 		System.out.println("Set the configuration in the g2loader.properties or add command line parameters.");
 		System.out.println("Command line usage: java -jar g2loader.jar -iniFile <path to ini file> \\");
-		System.out.println("                                          [-dataFile <path to data file>] \\");
+		System.out.println("                                          [-configCache <path for configuration cache>] \\");
+		System.out.println("                                          [-noConfigCache] \\");
+		System.out.println("                                          [-dataFile <paths, directory or glob of data files>] \\");
 		System.out.println("                                          [-exportToFile <path for export file>] \\");
+		System.out.println("                                          [-exportShardSize <entities per export file>] \\");
+		System.out.println("                                          [-exportThreads <number of export writing threads>] \\");
+		System.out.println("                                          [-affectedEntitiesFile <path for affected entity IDs>] \\");
+		System.out.println("                                          [-deltaExportFile <path for export of affected entities>] \\");
 		System.out.println("                                          [-statsToFile <path for statistics file>] \\");
-		System.out.println("                                          [-dataSource <name of data source>] \\");
+		System.out.println("                                          [-dataSource <names of data sources>] \\");
+		System.out.println("                                          [-scanDataSources] \\");
+		System.out.println("                                          [-threads <number of loading threads>] \\");
+		System.out.println("                                          [-workers <number of worker processes>] \\");
+		System.out.println("                                          [-serve <port to load records sent over HTTP>] \\");
+		System.out.println("                                          [-serveQueueSize <records the server holds>] \\");
+		System.out.println("                                          [-dedup] \\");
+		System.out.println("                                          [-deltaIndex <path for index of loaded records>] \\");
+		System.out.println("                                          [-deltaDeletes] \\");
+		System.out.println("                                          [-adaptive] \\");
+		System.out.println("                                          [-affinity] \\");
+		System.out.println("                                          [-affinityKey <attributes records are scheduled by>] \\");
+		System.out.println("                                          [-splits <number of parts read in parallel>] \\");
+		System.out.println("                                          [-checkpointFile <path for checkpoint file>] \\");
+		System.out.println("                                          [-resume] \\");
+		System.out.println("                                          [-checkpointInterval <seconds between saves>] \\");
+		System.out.println("                                          [-checkpointRecords <records between saves>] \\");
+		System.out.println("                                          [-deadLetterFile <path for failed records>] \\");
+		System.out.println("                                          [-maxFailures <failures before stopping>] \\");
+		System.out.println("                                          [-retries <retries of failed records>] \\");
+		System.out.println("                                          [-retryErrorCodes <engine error codes to retry>] \\");
+		System.out.println("                                          [-retryFailed <dead-letter file to load>] \\");
+		System.out.println("                                          [-metricsFile <path for metrics file>] \\");
+		System.out.println("                                          [-metricsInterval <seconds between reports>] \\");
+		System.out.println("                                          [-processRedo] \\");
+		System.out.println("                                          [-redoThreads <number of redo threads>] \\");
+		System.out.println("                                          [-redoSeconds <seconds to process redo records>] \\");
+		System.out.println("                                          [-redoDuringLoad] \\");
 		System.out.println("                                          [-purge]  ");
 		System.out.println("                                          [-debug]");
 		System.out.println("");
@@ -4,19 +4,29 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.io.IOException;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.Scanner;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.json.Json;
+import javax.json.JsonArray;
 import javax.json.JsonObject;
-import javax.json.JsonString;
-import javax.json.JsonValue;
 import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
 
 import com.senzing.g2.engine.Result;
 import com.senzing.g2.engine.G2Engine;
@@ -32,6 +42,17 @@ public class G2LoaderHandler {
 	protected G2Engine g2Engine;
 	protected String configData;
 	protected boolean verboseLogging = false;
+	protected LoadMetrics metrics;
+	protected AffectedEntitySink affectedEntities;
+
+	// Shared by the configuration operations, initialized on first use
+	private G2Config g2Config;
+	private G2ConfigMgr g2ConfigMgr;
+	private ConfigCache configCache;
+	// Next to the ini file when not set
+	private Path configCacheFile;
+	private boolean configCacheDisabled;
+	private final Map<String, Long> startupMillis = new LinkedHashMap<>();
 
 	static final String moduleName = "g2loader";
 
@@ -41,9 +62,38 @@ public class G2LoaderHandler {
 	public G2LoaderHandler() {
 	}
 
+	/**
+	 * Creates a handler around an engine that is already initialized, e.g. a stub
+	 * engine when exercising the loading pipeline without a repository.
+	 * 
+	 * @param g2Engine Engine the records are loaded into
+	 */
+	public G2LoaderHandler(G2Engine g2Engine) {
+		this.g2Engine = g2Engine;
+	}
+
+	/**
+	 * Sets where the configuration cache is kept, instead of next to the ini file.
+	 * 
+	 * @param configCacheFile Cache file
+	 */
+	public void setConfigCacheFile(Path configCacheFile) {
+		this.configCacheFile = configCacheFile;
+	}
+
+	/**
+	 * Converts the ini file and checks the configuration on every start, without a
+	 * configuration cache.
+	 */
+	public void disableConfigCache() {
+		configCacheDisabled = true;
+	}
+
 	/**
 	 * Initializes the service. It reads the information from the ini file and sets
-	 * up G2 using that data.
+	 * up G2 using that data. The converted ini file and whether the repository has
+	 * a configuration are cached between runs, a cached configuration is not
+	 * checked again unless the engine fails to start with it.
 	 * 
 	 * @param iniFile
 	 * 
@@ -52,41 +102,105 @@ public class G2LoaderHandler {
 	public void init(String iniFile, boolean verboseLogging) throws Exception {
 		configData = null;
 		this.verboseLogging = verboseLogging;
+		long start = System.currentTimeMillis();
+		Path cacheFile = configCacheFile != null ? configCacheFile : ConfigCache.defaultFile(Paths.get(iniFile));
+		configCache = new ConfigCache(Paths.get(iniFile), configCacheDisabled ? null : cacheFile);
 		try {
-			configData = getG2IniDataAsJson(iniFile);
+			configCache.load();
+			configData = configCache.getIniJson();
 		} catch (IOException | RuntimeException e) {
 			throw new Exception(e);
 		}
+		start = recordStartup("ini", start);
 
-		initConfig();
+		boolean cachedConfig = configCache.getDefaultConfigID() != 0;
+		if (!cachedConfig) {
+			initConfig();
+			start = recordStartup("config", start);
+		}
 
 		g2Engine = new G2JNI();
 		int result = g2Engine.initV2(moduleName, configData, verboseLogging);
+		if (result != 0 && cachedConfig) {
+			// The repository may have lost the configuration it had when it was cached
+			configCache.setDefaultConfigID(0);
+			initConfig();
+			result = g2Engine.initV2(moduleName, configData, verboseLogging);
+		}
 		if (result != 0) {
 			StringBuilder errorMessage = new StringBuilder("G2 engine failed to initalize with error: ");
 			errorMessage.append(g2ErrorMessage(g2Engine));
 			throw new Exception(errorMessage.toString());
 		}
+		recordStartup("engine", start);
+		configCache.save();
 	}
 
-	protected void initConfig() throws Exception {
-		int result = 0;
+	/**
+	 * @return Milliseconds spent in each step of starting up, in order
+	 */
+	public Map<String, Long> getStartupMillis() {
+		return Collections.unmodifiableMap(startupMillis);
+	}
 
-		G2Config g2Config = new G2ConfigJNI();
-		result = g2Config.initV2(moduleName, configData, verboseLogging);
-		if (result != 0) {
-			StringBuilder errorMessage = new StringBuilder("G2Config failed to initalize with error: ");
-			errorMessage.append(g2ErrorMessage(g2Config));
-			throw new Exception(errorMessage.toString());
+	/**
+	 * Records the duration of a start up step.
+	 * 
+	 * @param step  Name of the step
+	 * @param start Start of the step
+	 * @return End of the step, the start of the next one
+	 */
+	protected long recordStartup(String step, long start) {
+		long end = System.currentTimeMillis();
+		startupMillis.merge(step, end - start, Long::sum);
+		return end;
+	}
+
+	/**
+	 * @return The configuration API, initialized on first use and shared by all
+	 *         configuration operations
+	 * 
+	 * @throws Exception
+	 */
+	protected G2Config getConfig() throws Exception {
+		if (g2Config == null) {
+			G2Config config = new G2ConfigJNI();
+			int result = config.initV2(moduleName, configData, verboseLogging);
+			if (result != 0) {
+				StringBuilder errorMessage = new StringBuilder("G2Config failed to initalize with error: ");
+				errorMessage.append(g2ErrorMessage(config));
+				throw new Exception(errorMessage.toString());
+			}
+			g2Config = config;
 		}
+		return g2Config;
+	}
 
-		G2ConfigMgr g2ConfigMgr = new G2ConfigMgrJNI();
-		result = g2ConfigMgr.initV2(moduleName, configData, verboseLogging);
-		if (result != 0) {
-			StringBuilder errorMessage = new StringBuilder("G2ConfigMgr failed to initalize with error: ");
-			errorMessage.append(g2ErrorMessage(g2ConfigMgr));
-			throw new Exception(errorMessage.toString());
+	/**
+	 * @return The configuration manager, initialized on first use and shared by
+	 *         all configuration operations
+	 * 
+	 * @throws Exception
+	 */
+	protected G2ConfigMgr getConfigMgr() throws Exception {
+		if (g2ConfigMgr == null) {
+			G2ConfigMgr configMgr = new G2ConfigMgrJNI();
+			int result = configMgr.initV2(moduleName, configData, verboseLogging);
+			if (result != 0) {
+				StringBuilder errorMessage = new StringBuilder("G2ConfigMgr failed to initalize with error: ");
+				errorMessage.append(g2ErrorMessage(configMgr));
+				throw new Exception(errorMessage.toString());
+			}
+			g2ConfigMgr = configMgr;
 		}
+		return g2ConfigMgr;
+	}
+
+	protected void initConfig() throws Exception {
+		int result = 0;
+
+		G2Config g2Config = getConfig();
+		G2ConfigMgr g2ConfigMgr = getConfigMgr();
 
 		Result<Long> configID = new Result<Long>();
 		result = g2ConfigMgr.getDefaultConfigID(configID);
@@ -99,10 +213,16 @@ public class G2LoaderHandler {
 		if (configID.getValue() == 0) {
 			long configHandle = g2Config.create();
 			StringBuffer configStringBuffer = new StringBuffer();
-			if (configHandle == 0 || 0 != g2Config.save(configHandle, configStringBuffer)) {
-				StringBuilder errorMessage = new StringBuilder("G2Config failed to save with error: ");
-				errorMessage.append(g2ErrorMessage(g2Config));
-				throw new Exception(errorMessage.toString());
+			try {
+				if (configHandle == 0 || 0 != g2Config.save(configHandle, configStringBuffer)) {
+					StringBuilder errorMessage = new StringBuilder("G2Config failed to save with error: ");
+					errorMessage.append(g2ErrorMessage(g2Config));
+					throw new Exception(errorMessage.toString());
+				}
+			} finally {
+				if (configHandle != 0) {
+					g2Config.close(configHandle);
+				}
 			}
 			if (0 != g2ConfigMgr.addConfig(configStringBuffer.toString(), "Initial Configuration", configID)) {
 				StringBuilder errorMessage = new StringBuilder("G2ConfigMgr failed to addConfig with error: ");
@@ -115,20 +235,15 @@ public class G2LoaderHandler {
 				throw new Exception(errorMessage.toString());
 			}
 		}
-
+		configCache.setDefaultConfigID(configID.getValue());
 	}
 
 	protected void purgeRepository() throws Exception {
-		G2ConfigMgr g2ConfigMgr = new G2ConfigMgrJNI();
-		int result = g2ConfigMgr.initV2(moduleName, configData, verboseLogging);
-		if (result != 0) {
-			StringBuilder errorMessage = new StringBuilder("G2ConfigMgr failed to initalize with error: ");
-			errorMessage.append(g2ErrorMessage(g2ConfigMgr));
-			throw new Exception(errorMessage.toString());
-		}
+		long start = System.currentTimeMillis();
+		G2ConfigMgr g2ConfigMgr = getConfigMgr();
 
 		Result<Long> configID = new Result<Long>();
-		result = g2ConfigMgr.getDefaultConfigID(configID);
+		int result = g2ConfigMgr.getDefaultConfigID(configID);
 		if (result != 0) {
 			StringBuilder errorMessage = new StringBuilder("G2ConfigMgr failed to getDefaultConfigID with error: ");
 			errorMessage.append(g2ErrorMessage(g2ConfigMgr));
@@ -141,45 +256,170 @@ public class G2LoaderHandler {
 
 		g2Engine.purgeRepository();
 		g2Engine.reinitV2(configID.getValue());
+		recordStartup("purge", start);
+	}
+
+	/**
+	 * Sets the metrics the record parsing and engine calls are measured in.
+	 * 
+	 * @param metrics Metrics of the load, or null
+	 */
+	public void setMetrics(LoadMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Loads, deletes and processes redo records with info, collecting the
+	 * entities they affect.
+	 * 
+	 * @param affectedEntities Sink of the affected entities, or null to load
+	 *                         without info
+	 */
+	public void setAffectedEntities(AffectedEntitySink affectedEntities) {
+		this.affectedEntities = affectedEntities;
 	}
 
 	protected void addRecord(String record) throws Exception {
-		JsonObject jsonRecord = Json.createReader(new StringReader(record)).readObject();
+		long start = System.nanoTime();
+		RecordKeys keys = RecordKeys.fromJson(record);
+		if (metrics != null) {
+			metrics.recordParse(System.nanoTime() - start);
+		}
+		addRecord(keys.dataSource, keys.recordID, record);
+	}
 
-		JsonValue value = (JsonValue) jsonRecord.get("RECORD_ID");
-		if (value == null || value.getValueType() != JsonValue.ValueType.STRING)
+	/**
+	 * Adds a record whose keys are already known, e.g. from the columns of a CSV
+	 * row, without parsing the JSON again.
+	 * 
+	 * @param dataSource Data source of the record
+	 * @param recordID   ID of the record
+	 * @param record     JSON record
+	 * 
+	 * @throws Exception
+	 */
+	protected void addRecord(String dataSource, String recordID, String record) throws Exception {
+		if (recordID == null)
 			throw new Exception("RECORD_ID not populated in JSON record");
-		String recordID = ((JsonString) value).getString();
-
-		value = jsonRecord.get("DATA_SOURCE");
-		if (value == null || value.getValueType() != JsonValue.ValueType.STRING)
+		if (dataSource == null)
 			throw new Exception("DATA_SOURCE not populated in JSON record");
-		String dataSource = ((JsonString) value).getString();
 
-		if (0 != g2Engine.addRecord(dataSource, recordID, record, null)) {
+		StringBuffer info = affectedEntities != null ? new StringBuffer() : null;
+		long start = System.nanoTime();
+		int result = info != null ? g2Engine.addRecordWithInfo(dataSource, recordID, record, null, 0, info)
+				: g2Engine.addRecord(dataSource, recordID, record, null);
+		if (metrics != null) {
+			metrics.recordEngineCall(System.nanoTime() - start);
+		}
+		if (0 != result) {
 			StringBuilder errorMessage = new StringBuilder("G2Engine failed to addRecord with error: ");
 			errorMessage.append(g2ErrorMessage(g2Engine));
+			throw new RecordException(errorMessage.toString(), g2Engine.getLastExceptionCode());
+		}
+		if (info != null) {
+			affectedEntities.addInfo(info.toString());
+		}
+	}
+
+	/**
+	 * Deletes a record from the repository.
+	 * 
+	 * @param dataSource Data source of the record
+	 * @param recordID   ID of the record
+	 * 
+	 * @throws Exception
+	 */
+	protected void deleteRecord(String dataSource, String recordID) throws Exception {
+		StringBuffer info = affectedEntities != null ? new StringBuffer() : null;
+		int result = info != null ? g2Engine.deleteRecordWithInfo(dataSource, recordID, null, 0, info)
+				: g2Engine.deleteRecord(dataSource, recordID, null);
+		if (0 != result) {
+			StringBuilder errorMessage = new StringBuilder("G2Engine failed to deleteRecord with error: ");
+			errorMessage.append(g2ErrorMessage(g2Engine));
+			throw new RecordException(errorMessage.toString(), g2Engine.getLastExceptionCode());
+		}
+		if (info != null) {
+			affectedEntities.addInfo(info.toString());
+		}
+	}
+
+	/**
+	 * Processes the next record of the redo queue.
+	 *
+	 * @return Whether there was a redo record to process
+	 *
+	 * @throws Exception
+	 */
+	protected boolean processRedoRecord() throws Exception {
+		StringBuffer record = new StringBuffer();
+		StringBuffer info = affectedEntities != null ? new StringBuffer() : null;
+		int result = info != null ? g2Engine.processRedoRecordWithInfo(0, record, info)
+				: g2Engine.processRedoRecord(record);
+		if (0 != result) {
+			StringBuilder errorMessage = new StringBuilder("G2Engine failed to processRedoRecord with error: ");
+			errorMessage.append(g2ErrorMessage(g2Engine));
+			throw new RecordException(errorMessage.toString(), g2Engine.getLastExceptionCode());
+		}
+		if (info != null && info.length() > 0) {
+			affectedEntities.addInfo(info.toString());
+		}
+		return record.length() > 0;
+	}
+
+	/**
+	 * @return Number of records in the redo queue
+	 *
+	 * @throws Exception
+	 */
+	protected long countRedoRecords() throws Exception {
+		long count = g2Engine.countRedoRecords();
+		if (count < 0) {
+			StringBuilder errorMessage = new StringBuilder("G2Engine failed to countRedoRecords with error: ");
+			errorMessage.append(g2ErrorMessage(g2Engine));
 			throw new Exception(errorMessage.toString());
 		}
+		return count;
 	}
 
 	protected void exportToFile(String outFile) throws Exception {
+		exportToFile(outFile, 0, 1);
+	}
+
+	/**
+	 * Exports the entities, optionally split into shards.
+	 * 
+	 * @param outFile   File the export is written to, the shards are named after it
+	 * @param shardSize Entities per shard, 0 for a single file
+	 * @param writers   Number of threads writing shards
+	 * @return Number of files written
+	 * 
+	 * @throws Exception
+	 */
+	protected int exportToFile(String outFile, int shardSize, int writers) throws Exception {
 		// int flags = g2Engine.G2_EXPORT_INCLUDE_ALL_ENTITIES;
 		// int flags = -1;
 		int flags = (G2Engine.G2_ENTITY_DEFAULT_FLAGS | G2Engine.G2_EXPORT_INCLUDE_ALL_ENTITIES
 				| G2Engine.G2_EXPORT_INCLUDE_ALL_RELATIONSHIPS);
 
-		long exportHandle = g2Engine.exportJSONEntityReport(flags);
-		Writer outWriter = new OutputStreamWriter(new FileOutputStream(outFile, false), StandardCharsets.UTF_8);
-
-		String response = g2Engine.fetchNext(exportHandle);
-		while (response != null) {
-			outWriter.write(response);
-			response = g2Engine.fetchNext(exportHandle);
-		}
+		EntityExporter exporter = new EntityExporter(g2Engine, flags);
+		exporter.setSharding(shardSize, writers);
+		exporter.export(Paths.get(outFile));
+		return exporter.getShardCount();
+	}
 
-		g2Engine.closeExport(exportHandle);
-		outWriter.close();
+	/**
+	 * Exports the given entities only, e.g. the ones affected by a load.
+	 * 
+	 * @param outFile   File the export is written to
+	 * @param entityIDs IDs of the entities
+	 * @param fetchers  Number of threads fetching entities
+	 * @return Number of the entities that no longer exist
+	 * 
+	 * @throws Exception
+	 */
+	protected long exportEntitiesToFile(String outFile, long[] entityIDs, int fetchers) throws Exception {
+		EntityExporter exporter = new EntityExporter(g2Engine, G2Engine.G2_ENTITY_DEFAULT_FLAGS);
+		return exporter.exportEntities(Paths.get(outFile), entityIDs, fetchers);
 	}
 
 	protected void statsToFile(String statsFile) throws Exception {
@@ -225,23 +465,26 @@ public class G2LoaderHandler {
 	}
 
 	protected void addDataSource(String dataSource) throws Exception {
-		int result = 0;
+		addDataSources(Collections.singleton(dataSource));
+	}
 
-		G2Config g2Config = new G2ConfigJNI();
-		result = g2Config.initV2(moduleName, configData, verboseLogging);
-		if (result != 0) {
-			StringBuilder errorMessage = new StringBuilder("G2Config failed to initalize with error: ");
-			errorMessage.append(g2ErrorMessage(g2Config));
-			throw new Exception(errorMessage.toString());
-		}
+	/**
+	 * Registers data sources, each with an entity type of the same code, in a
+	 * single new configuration and reinitializes the engine with it once. Data
+	 * sources and entity types the configuration already has are skipped, when
+	 * there is nothing to add the configuration is left as it is.
+	 * 
+	 * @param dataSources Codes of the data sources
+	 * @return Codes of the data sources that were added
+	 * 
+	 * @throws Exception
+	 */
+	protected List<String> addDataSources(Collection<String> dataSources) throws Exception {
+		int result = 0;
+		long start = System.currentTimeMillis();
 
-		G2ConfigMgr g2ConfigMgr = new G2ConfigMgrJNI();
-		result = g2ConfigMgr.initV2(moduleName, configData, verboseLogging);
-		if (result != 0) {
-			StringBuilder errorMessage = new StringBuilder("G2ConfigMgr failed to initalize with error: ");
-			errorMessage.append(g2ErrorMessage(g2ConfigMgr));
-			throw new Exception(errorMessage.toString());
-		}
+		G2Config g2Config = getConfig();
+		G2ConfigMgr g2ConfigMgr = getConfigMgr();
 
 		Result<Long> configID = new Result<Long>();
 		result = g2ConfigMgr.getDefaultConfigID(configID);
@@ -271,37 +514,100 @@ public class G2LoaderHandler {
 			throw new Exception(errorMessage.toString());
 		}
 
-		String cmd = "{\"DSRC_CODE\": \"" + dataSource + "\"}";
-		response = new StringBuffer();
-
-		result = g2Config.addDataSourceV2(configHandle, cmd, response);
-
-		cmd = "{\"ETYPE_CODE\": \"" + dataSource + "\",\"ECLASS_CODE\": \"ACTOR\"}";
-		response = new StringBuffer();
-
-		result = g2Config.addEntityTypeV2(configHandle, cmd, response);
-
-		if (result == 0) {
+		List<String> added = new ArrayList<>();
+		// The shared configuration API keeps every loaded configuration until it is closed
+		try {
 			response = new StringBuffer();
-			if (configHandle == 0 || 0 != g2Config.save(configHandle, response)) {
-				StringBuilder errorMessage = new StringBuilder("G2Config failed to save with error: ");
+			if (0 != g2Config.listDataSourcesV2(configHandle, response)) {
+				StringBuilder errorMessage = new StringBuilder("G2Config failed to listDataSourcesV2 with error: ");
 				errorMessage.append(g2ErrorMessage(g2Config));
 				throw new Exception(errorMessage.toString());
 			}
-			if (0 != g2ConfigMgr.addConfig(response.toString(), "Initial Configuration", configID)) {
-				StringBuilder errorMessage = new StringBuilder("G2ConfigMgr failed to addConfig with error: ");
-				errorMessage.append(g2ErrorMessage(g2ConfigMgr));
+			Set<String> existingDataSources = readCodes(response.toString(), "DATA_SOURCES", "DSRC_CODE");
+
+			response = new StringBuffer();
+			if (0 != g2Config.listEntityTypesV2(configHandle, response)) {
+				StringBuilder errorMessage = new StringBuilder("G2Config failed to listEntityTypesV2 with error: ");
+				errorMessage.append(g2ErrorMessage(g2Config));
 				throw new Exception(errorMessage.toString());
 			}
-			if (0 != g2ConfigMgr.setDefaultConfigID(configID.getValue())) {
-				StringBuilder errorMessage = new StringBuilder("G2ConfigMgr failed to setDefaultConfigID with error: ");
-				errorMessage.append(g2ErrorMessage(g2ConfigMgr));
-				throw new Exception(errorMessage.toString());
+			Set<String> existingEntityTypes = readCodes(response.toString(), "ENTITY_TYPES", "ETYPE_CODE");
+
+			boolean changed = false;
+			for (String dataSource : dataSources) {
+				// Sent as given, compared as the configuration keeps them, in upper case
+				String key = dataSource.toUpperCase(Locale.ROOT);
+				if (existingDataSources.add(key)) {
+					String cmd = Json.createObjectBuilder().add("DSRC_CODE", dataSource).build().toString();
+					if (0 != g2Config.addDataSourceV2(configHandle, cmd, new StringBuffer())) {
+						StringBuilder errorMessage = new StringBuilder("G2Config failed to addDataSourceV2 with error: ");
+						errorMessage.append(g2ErrorMessage(g2Config));
+						throw new Exception(errorMessage.toString());
+					}
+					added.add(dataSource);
+					changed = true;
+				}
+				if (existingEntityTypes.add(key)) {
+					String cmd = Json.createObjectBuilder().add("ETYPE_CODE", dataSource).add("ECLASS_CODE", "ACTOR")
+							.build().toString();
+					if (0 != g2Config.addEntityTypeV2(configHandle, cmd, new StringBuffer())) {
+						StringBuilder errorMessage = new StringBuilder("G2Config failed to addEntityTypeV2 with error: ");
+						errorMessage.append(g2ErrorMessage(g2Config));
+						throw new Exception(errorMessage.toString());
+					}
+					changed = true;
+				}
 			}
 
-			g2Engine.reinitV2(configID.getValue());
+			if (changed) {
+				response = new StringBuffer();
+				if (0 != g2Config.save(configHandle, response)) {
+					StringBuilder errorMessage = new StringBuilder("G2Config failed to save with error: ");
+					errorMessage.append(g2ErrorMessage(g2Config));
+					throw new Exception(errorMessage.toString());
+				}
+				String comment = added.isEmpty() ? "Added entity types"
+						: "Added data sources " + String.join(", ", added);
+				if (0 != g2ConfigMgr.addConfig(response.toString(), comment, configID)) {
+					StringBuilder errorMessage = new StringBuilder("G2ConfigMgr failed to addConfig with error: ");
+					errorMessage.append(g2ErrorMessage(g2ConfigMgr));
+					throw new Exception(errorMessage.toString());
+				}
+				if (0 != g2ConfigMgr.setDefaultConfigID(configID.getValue())) {
+					StringBuilder errorMessage = new StringBuilder(
+							"G2ConfigMgr failed to setDefaultConfigID with error: ");
+					errorMessage.append(g2ErrorMessage(g2ConfigMgr));
+					throw new Exception(errorMessage.toString());
+				}
+
+				if (0 != g2Engine.reinitV2(configID.getValue())) {
+					StringBuilder errorMessage = new StringBuilder("G2Engine failed to reinitV2 with error: ");
+					errorMessage.append(g2ErrorMessage(g2Engine));
+					throw new Exception(errorMessage.toString());
+				}
+			}
+		} finally {
+			g2Config.close(configHandle);
 		}
+		recordStartup("dataSources", start);
+		return added;
+	}
 
+	/**
+	 * Reads the upper case codes of a configuration listing, e.g.
+	 * {"DATA_SOURCES":[{"DSRC_ID":1,"DSRC_CODE":"TEST"}]}.
+	 */
+	private static Set<String> readCodes(String listing, String listKey, String codeKey) {
+		Set<String> codes = new HashSet<>();
+		try (JsonReader reader = Json.createReader(new StringReader(listing))) {
+			JsonArray entries = reader.readObject().getJsonArray(listKey);
+			if (entries != null) {
+				for (JsonObject entry : entries.getValuesAs(JsonObject.class)) {
+					codes.add(entry.getString(codeKey).toUpperCase(Locale.ROOT));
+				}
+			}
+		}
+		return codes;
 	}
 
 	/**
@@ -311,6 +617,12 @@ public class G2LoaderHandler {
 		if (g2Engine != null) {
 			g2Engine.destroy();
 		}
+		if (g2Config != null) {
+			g2Config.destroy();
+		}
+		if (g2ConfigMgr != null) {
+			g2ConfigMgr.destroy();
+		}
 	}
 
 	static protected String g2ErrorMessage(G2Engine g2) {
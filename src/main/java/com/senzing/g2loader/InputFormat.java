@@ -0,0 +1,75 @@
+package com.senzing.g2loader;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import javax.json.Json;
+import javax.json.JsonReader;
+
+/**
+ * Detects the format of the records of an input from its first line. The line
+ * is read ahead on a marked stream and the stream reset to its start, so the
+ * input is read only once and streams that cannot be reopened can be sniffed.
+ */
+final class InputFormat {
+
+	enum Format {
+		JSON_LINES, JSON_ARRAY, CSV
+	}
+
+	/**
+	 * Longest first line that is parsed, a longer one is taken for JSON when it
+	 * starts like it.
+	 */
+	static final int SNIFF_SIZE = 4 * 1024 * 1024;
+
+	private InputFormat() {
+	}
+
+	/**
+	 * Detects the format of a stream. The stream is at its start afterwards.
+	 *
+	 * @param input Uncompressed UTF-8 stream
+	 * @return JSON_LINES when the first line is a JSON object, JSON_ARRAY when the
+	 *         input starts with "[", CSV otherwise
+	 *
+	 * @throws IOException
+	 */
+	static Format detect(BufferedInputStream input) throws IOException {
+		input.mark(SNIFF_SIZE + 1);
+		ByteArrayOutputStream firstLine = new ByteArrayOutputStream();
+		int b;
+		while ((b = input.read()) >= 0 && b != '\n' && firstLine.size() < SNIFF_SIZE) {
+			firstLine.write(b);
+		}
+		input.reset();
+
+		String line = firstLine.toString(StandardCharsets.UTF_8);
+		if (line.startsWith("\uFEFF")) {
+			line = line.substring(1);
+		}
+		line = line.trim();
+		if (line.startsWith("[")) {
+			return Format.JSON_ARRAY;
+		}
+		if (firstLine.size() >= SNIFF_SIZE) {
+			return line.startsWith("{") ? Format.JSON_LINES : Format.CSV;
+		}
+		return isJsonObject(line) ? Format.JSON_LINES : Format.CSV;
+	}
+
+	private static boolean isJsonObject(String line) {
+		if (!line.startsWith("{")) {
+			return false;
+		}
+		try (JsonReader reader = Json.createReader(new StringReader(line))) {
+			reader.readObject();
+			return true;
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.senzing.g2loader;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.json.Json;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.input.BOMInputStream;
+
+/**
+ * Reads the keys of the records of a data file ahead of a load, e.g. to find the
+ * data sources to register or the records that are repeated later in the file.
+ * Nothing but the keys is taken from the records. Records are numbered like the
+ * load numbers them, records that cannot be read are skipped as the load reports
+ * them.
+ */
+final class KeyScanner {
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * Receives the keys of the records in file order.
+	 */
+	interface KeyConsumer {
+		/**
+		 * @param lineNumber Number of the record in the load
+		 * @param dataSource DATA_SOURCE of the record, or null
+		 * @param recordID   RECORD_ID of the record, or null
+		 *
+		 * @throws IOException
+		 */
+		void accept(long lineNumber, String dataSource, String recordID) throws IOException;
+	}
+
+	private KeyScanner() {
+	}
+
+	/**
+	 * @param files Data files
+	 * @return The data sources of their records, sorted
+	 *
+	 * @throws Exception if a file cannot be read
+	 */
+	static Set<String> scanDataSources(List<Path> files) throws Exception {
+		Set<String> dataSources = new TreeSet<>();
+		for (Path file : files) {
+			scan(file, (lineNumber, dataSource, recordID) -> {
+				if (dataSource != null && !dataSource.isEmpty()) {
+					dataSources.add(dataSource);
+				}
+			});
+		}
+		return dataSources;
+	}
+
+	/**
+	 * Reads the keys of every record of a file.
+	 *
+	 * @param file     Data file
+	 * @param consumer Receives the keys
+	 *
+	 * @throws Exception if the file cannot be read or is a stream, which can only
+	 *                   be read once
+	 */
+	static void scan(Path file, KeyConsumer consumer) throws Exception {
+		if (!Files.isRegularFile(file)) {
+			throw new Exception("The records of " + file + " cannot be read ahead, it can only be read once");
+		}
+		try (BufferedInputStream input = new BufferedInputStream(CompressedInput.open(file), BUFFER_SIZE)) {
+			switch (InputFormat.detect(input)) {
+			case JSON_LINES:
+				scanJsonLines(input, consumer);
+				break;
+			case JSON_ARRAY:
+				scanJsonArray(input, consumer);
+				break;
+			default:
+				scanCsv(input, consumer);
+			}
+		}
+	}
+
+	private static void scanJsonLines(BufferedInputStream input, KeyConsumer consumer) throws IOException {
+		LineReader reader = new StreamLineReader(input);
+		long lineNumber = 0;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			RecordKeys keys;
+			try {
+				keys = RecordKeys.fromJson(line);
+			} catch (Exception e) {
+				// Not a JSON record
+				continue;
+			}
+			consumer.accept(lineNumber, keys.dataSource, keys.recordID);
+		}
+	}
+
+	private static void scanJsonArray(BufferedInputStream input, KeyConsumer consumer) throws IOException {
+		try (JsonParser parser = Json.createParser(
+				new InputStreamReader(new BOMInputStream(input), StandardCharsets.UTF_8))) {
+			if (!parser.hasNext() || parser.next() != JsonParser.Event.START_ARRAY) {
+				return;
+			}
+			long number = 0;
+			while (parser.next() != JsonParser.Event.END_ARRAY) {
+				JsonValue element = parser.getValue();
+				number++;
+				if (element.getValueType() == JsonValue.ValueType.OBJECT) {
+					RecordKeys keys = RecordKeys.fromObject(element.asJsonObject());
+					consumer.accept(number, keys.dataSource, keys.recordID);
+				}
+			}
+		}
+	}
+
+	private static void scanCsv(BufferedInputStream input, KeyConsumer consumer) throws IOException {
+		try (CSVParser parser = new CSVParser(
+				new InputStreamReader(new BOMInputStream(input), StandardCharsets.UTF_8),
+				CSVFormat.EXCEL.withHeader())) {
+			CsvRecordConverter converter = new CsvRecordConverter(parser.getHeaderNames());
+			for (CSVRecord record : parser) {
+				if (record.isConsistent()) {
+					// The header is line 1
+					consumer.accept(1 + record.getRecordNumber(), converter.getDataSource(record),
+							converter.getRecordID(record));
+				}
+			}
+		}
+	}
+}
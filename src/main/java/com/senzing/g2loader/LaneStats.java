@@ -0,0 +1,87 @@
+package com.senzing.g2loader;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Counts the records a lane of the loader processed and the time it spent on
+ * them, with the keys that came up most in it. Only the thread of the lane
+ * records in it, so nothing is locked; it is read once the lane has finished.
+ * <p>
+ * The keys are counted with the Misra-Gries summary of a few counters, which
+ * finds every key making up more than a share of the lane's records without
+ * keeping all of them. Counts are lower bounds.
+ */
+class LaneStats {
+
+	private static final int HOT_KEY_COUNTERS = 8;
+
+	private final int lane;
+	private long records;
+	private long busyNanos;
+	private final Map<String, Long> keyCounts = new HashMap<>();
+
+	/**
+	 * @param lane Number of the lane
+	 */
+	LaneStats(int lane) {
+		this.lane = lane;
+	}
+
+	/**
+	 * Records a record processed by the lane.
+	 *
+	 * @param key   Key the record was scheduled by, or null
+	 * @param nanos Time spent on it in nanoseconds
+	 */
+	void record(String key, long nanos) {
+		records++;
+		busyNanos += nanos;
+		if (key == null) {
+			return;
+		}
+		Long count = keyCounts.get(key);
+		if (count != null) {
+			keyCounts.put(key, count + 1);
+		} else if (keyCounts.size() < HOT_KEY_COUNTERS) {
+			keyCounts.put(key, 1L);
+		} else {
+			for (Iterator<Map.Entry<String, Long>> entries = keyCounts.entrySet().iterator(); entries.hasNext();) {
+				Map.Entry<String, Long> entry = entries.next();
+				if (entry.getValue() == 1) {
+					entries.remove();
+				} else {
+					entry.setValue(entry.getValue() - 1);
+				}
+			}
+		}
+	}
+
+	int getLane() {
+		return lane;
+	}
+
+	long getRecords() {
+		return records;
+	}
+
+	long getBusyNanos() {
+		return busyNanos;
+	}
+
+	/**
+	 * @return The key seen most in the lane, or null
+	 */
+	String getHotKey() {
+		return keyCounts.entrySet().stream().max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse(null);
+	}
+
+	/**
+	 * @return Lower bound of the records of the hot key
+	 */
+	long getHotKeyCount() {
+		String key = getHotKey();
+		return key != null ? keyCounts.get(key) : 0;
+	}
+}
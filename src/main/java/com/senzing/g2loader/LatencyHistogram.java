@@ -0,0 +1,100 @@
+package com.senzing.g2loader;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations in nanoseconds. Values are counted in
+ * buckets that split every power of two in 16, which keeps percentiles within
+ * about 6% of the recorded values. Recording does not allocate.
+ */
+class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong max = new AtomicLong(0);
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos Duration in nanoseconds
+	 */
+	void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(value));
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Copies the current counts.
+	 *
+	 * @return Count of every bucket
+	 */
+	long[] snapshot() {
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Returns the largest duration recorded since the last call and starts over.
+	 *
+	 * @return Duration in nanoseconds
+	 */
+	long takeMax() {
+		return max.getAndSet(0);
+	}
+
+	/**
+	 * Returns a percentile of the values recorded between two snapshots.
+	 *
+	 * @param previous   Earlier snapshot, or null for all values
+	 * @param current    Later snapshot
+	 * @param percentile Percentile between 0 and 100
+	 * @return Duration in nanoseconds, 0 when nothing was recorded
+	 */
+	static long percentile(long[] previous, long[] current, double percentile) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += current[i] - (previous == null ? 0 : previous[i]);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += current[i] - (previous == null ? 0 : previous[i]);
+			if (seen >= rank) {
+				return midpoint(i);
+			}
+		}
+		return midpoint(BUCKETS - 1);
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa;
+	}
+
+	private static long midpoint(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lower + ((1L << shift) >> 1);
+	}
+}
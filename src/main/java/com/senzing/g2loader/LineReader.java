@@ -0,0 +1,24 @@
+package com.senzing.g2loader;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the lines of a JSON lines input as UTF-8.
+ */
+interface LineReader extends Closeable {
+
+	/**
+	 * Reads the next line.
+	 *
+	 * @return The line without its line break, or null at the end of the input
+	 *
+	 * @throws IOException
+	 */
+	String readLine() throws IOException;
+
+	/**
+	 * @return Byte offset in the input just past the last line read
+	 */
+	long getPosition();
+}
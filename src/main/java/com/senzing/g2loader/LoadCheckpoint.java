@@ -0,0 +1,238 @@
+package com.senzing.g2loader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+/**
+ * Keeps track of how far a load has got and saves it to a checkpoint file, so an
+ * interrupted load can resume from there.
+ * <p>
+ * Records are registered in input order as they are read and completed in any
+ * order by the loading threads. The checkpoint is the last record up to which
+ * every record has completed. It is saved every few seconds and every few
+ * records completed, on a thread of its own. Records completed past the saved
+ * checkpoint when the load is killed are added again on resume, which replaces
+ * them in the repository.
+ */
+class LoadCheckpoint {
+
+	static final int DEFAULT_SAVE_SECONDS = 10;
+	static final int DEFAULT_SAVE_RECORDS = 1000;
+
+	private static final int WINDOW = 1 << 16;
+	private static final int MASK = WINDOW - 1;
+
+	private final Path checkpointFile;
+	private final String dataFile;
+	private final String format;
+
+	// Line and position of the records in the window, indexed by sequence
+	private final long[] lines = new long[WINDOW];
+	private final long[] positions = new long[WINDOW];
+	private final AtomicLongArray completed = new AtomicLongArray(WINDOW);
+	private final AtomicLong nextIncomplete = new AtomicLong(0);
+	private long registered = 0;
+
+	private long committedLine;
+	private long committedPosition;
+	private volatile long committedSequence = -1;
+	private long savedSequence = -1;
+
+	private int saveSeconds = DEFAULT_SAVE_SECONDS;
+	private int saveRecords = DEFAULT_SAVE_RECORDS;
+	private final AtomicBoolean savePending = new AtomicBoolean(false);
+	private ScheduledExecutorService writer;
+	private Thread shutdownHook;
+
+	/**
+	 * @param checkpointFile File the checkpoint is saved to
+	 * @param dataFile       File being loaded
+	 * @param format         Format of the file, positions are only valid for it
+	 * @param line           Line the load starts after
+	 * @param position       Position the load starts at
+	 */
+	LoadCheckpoint(Path checkpointFile, String dataFile, String format, long line, long position) {
+		this.checkpointFile = checkpointFile;
+		this.dataFile = dataFile;
+		this.format = format;
+		this.committedLine = line;
+		this.committedPosition = position;
+	}
+
+	/**
+	 * Reads the checkpoint of an earlier load of a file.
+	 *
+	 * @param checkpointFile Checkpoint file
+	 * @param dataFile       File being loaded
+	 * @param format         Format of the file
+	 * @return The checkpoint, starting where the earlier load got to, or null when
+	 *         the earlier load saved none
+	 *
+	 * @throws Exception if the checkpoint is for another file
+	 */
+	static LoadCheckpoint resume(Path checkpointFile, String dataFile, String format) throws Exception {
+		if (!Files.exists(checkpointFile)) {
+			return null;
+		}
+		JsonObject saved;
+		try (Reader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+			saved = Json.createReader(reader).readObject();
+		}
+		if (!dataFile.equals(saved.getString("dataFile", null)) || !format.equals(saved.getString("format", null))) {
+			throw new Exception("Checkpoint " + checkpointFile + " is for " + saved.getString("format", "") + " file "
+					+ saved.getString("dataFile", ""));
+		}
+		return new LoadCheckpoint(checkpointFile, dataFile, format, saved.getJsonNumber("line").longValue(),
+				saved.getJsonNumber("position").longValue());
+	}
+
+	/**
+	 * @return Last line completed in order
+	 */
+	synchronized long getLine() {
+		return committedLine;
+	}
+
+	/**
+	 * @return Position in the file to resume reading from
+	 */
+	synchronized long getPosition() {
+		return committedPosition;
+	}
+
+	/**
+	 * Sets how often the checkpoint is saved. Must be called before it is started.
+	 *
+	 * @param seconds Seconds between saves
+	 * @param records Records completed between saves
+	 */
+	void setSaveInterval(int seconds, int records) {
+		this.saveSeconds = seconds;
+		this.saveRecords = records;
+	}
+
+	/**
+	 * Starts saving the checkpoint periodically and when the JVM shuts down.
+	 */
+	void start() {
+		writer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "g2loader-checkpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		writer.scheduleWithFixedDelay(this::saveQuietly, saveSeconds, saveSeconds, TimeUnit.SECONDS);
+		shutdownHook = new Thread(this::saveQuietly, "g2loader-checkpoint-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	 * Registers the next record read. Must be called from the reading thread, in
+	 * input order. Blocks while a whole window of records is waiting on an earlier
+	 * record that has not completed.
+	 *
+	 * @param line     Line of the record
+	 * @param position Position in the file just past the record
+	 * @return Sequence number to complete the record with
+	 */
+	long register(long line, long position) {
+		long sequence = registered++;
+		// The slot is reused once the record it held has been committed past
+		while (sequence - committedSequence >= WINDOW) {
+			LockSupport.parkNanos(100_000);
+		}
+		int slot = (int) (sequence & MASK);
+		lines[slot] = line;
+		positions[slot] = position;
+		return sequence;
+	}
+
+	/**
+	 * Marks a record as done, whether it loaded or failed.
+	 *
+	 * @param sequence Sequence number the record was registered with
+	 */
+	void complete(long sequence) {
+		completed.set((int) (sequence & MASK), sequence + 1);
+
+		long last = -1;
+		long next = nextIncomplete.get();
+		while (completed.get((int) (next & MASK)) == next + 1) {
+			if (nextIncomplete.compareAndSet(next, next + 1)) {
+				last = next;
+			}
+			next = nextIncomplete.get();
+		}
+		if (last >= 0) {
+			commit(last);
+		}
+	}
+
+	private synchronized void commit(long sequence) {
+		if (sequence > committedSequence) {
+			int slot = (int) (sequence & MASK);
+			committedSequence = sequence;
+			committedLine = lines[slot];
+			committedPosition = positions[slot];
+			// Saves queued while one is pending are folded into it
+			if (writer != null && sequence - savedSequence >= saveRecords && savePending.compareAndSet(false, true)) {
+				writer.execute(() -> {
+					savePending.set(false);
+					saveQuietly();
+				});
+			}
+		}
+	}
+
+	/**
+	 * Stops the periodic saving and saves the final checkpoint.
+	 *
+	 * @throws IOException
+	 */
+	void close() throws IOException {
+		if (writer != null) {
+			writer.shutdownNow();
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			writer = null;
+		}
+		save();
+	}
+
+	/**
+	 * Saves the checkpoint, replacing the file atomically.
+	 *
+	 * @throws IOException
+	 */
+	synchronized void save() throws IOException {
+		JsonObject checkpoint = Json.createObjectBuilder().add("dataFile", dataFile).add("format", format)
+				.add("line", committedLine).add("position", committedPosition).build();
+		savedSequence = committedSequence;
+		Path tempFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+			writer.write(checkpoint.toString());
+		}
+		Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void saveQuietly() {
+		try {
+			save();
+		} catch (IOException e) {
+			System.err.println("Failed to save checkpoint " + checkpointFile + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package com.senzing.g2loader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * Measures the loading hot path and reports it as a JSON line per interval.
+ * <p>
+ * The recording methods are called for every record from the loading threads.
+ * They only update striped counters and a lock free histogram, so they neither
+ * lock nor allocate. The reporter thread turns the counters into rates and
+ * percentiles for the interval.
+ */
+class LoadMetrics {
+
+	private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+	private final Path metricsFile;
+	private final int intervalSeconds;
+
+	private final LongAdder loaded = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder parseNanos = new LongAdder();
+	private final LongAdder engineNanos = new LongAdder();
+	private final LatencyHistogram engineLatency = new LatencyHistogram();
+	private final LongAdder redone = new LongAdder();
+	private volatile IntSupplier queueDepth = () -> 0;
+	private volatile IntSupplier concurrencyLimit;
+	private volatile LongSupplier redoBacklog;
+	private volatile Map<String, Long> startupMillis = Collections.emptyMap();
+
+	private final long startNanos = System.nanoTime();
+	private ScheduledExecutorService reporter;
+	private BufferedWriter writer;
+
+	// Totals at the previous report, only used by the reporter
+	private long lastNanos = startNanos;
+	private long lastLoaded;
+	private long lastFailed;
+	private long lastParseNanos;
+	private long lastEngineNanos;
+	private long lastRedone;
+	private long[] lastLatencies;
+	private long maxLatency;
+
+	/**
+	 * @param metricsFile     File the JSON lines are written to
+	 * @param intervalSeconds Seconds between reports
+	 */
+	LoadMetrics(Path metricsFile, int intervalSeconds) {
+		this.metricsFile = metricsFile;
+		this.intervalSeconds = intervalSeconds;
+	}
+
+	/**
+	 * Opens the metrics file and starts reporting.
+	 *
+	 * @throws IOException
+	 */
+	void start() throws IOException {
+		writer = Files.newBufferedWriter(metricsFile, StandardCharsets.UTF_8);
+		reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "g2loader-metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleAtFixedRate(this::reportQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Sets where the number of records waiting for a loading thread is read from.
+	 *
+	 * @param queueDepth Current queue depth
+	 */
+	void setQueueDepth(IntSupplier queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	/**
+	 * Sets where the adaptive limit of engine calls in flight is read from.
+	 *
+	 * @param concurrencyLimit Current limit
+	 */
+	void setConcurrencyLimit(IntSupplier concurrencyLimit) {
+		this.concurrencyLimit = concurrencyLimit;
+	}
+
+	/**
+	 * Sets where the number of records in the redo queue is read from, which adds
+	 * the redo records processed and left to the reports.
+	 *
+	 * @param redoBacklog Current number of redo records, negative when unknown
+	 */
+	void setRedoBacklog(LongSupplier redoBacklog) {
+		this.redoBacklog = redoBacklog;
+	}
+
+	/**
+	 * Sets the durations of the start up steps, reported with the summary.
+	 *
+	 * @param startupMillis Milliseconds by step
+	 */
+	void setStartup(Map<String, Long> startupMillis) {
+		this.startupMillis = startupMillis;
+	}
+
+	/**
+	 * Records the time spent finding the keys of a record.
+	 *
+	 * @param nanos Duration in nanoseconds
+	 */
+	void recordParse(long nanos) {
+		parseNanos.add(nanos);
+	}
+
+	/**
+	 * Records the duration of an engine call.
+	 *
+	 * @param nanos Duration in nanoseconds
+	 */
+	void recordEngineCall(long nanos) {
+		engineNanos.add(nanos);
+		engineLatency.record(nanos);
+	}
+
+	void recordLoaded() {
+		loaded.increment();
+	}
+
+	void recordFailed() {
+		failed.increment();
+	}
+
+	void recordRedo() {
+		redone.increment();
+	}
+
+	/**
+	 * Stops reporting after a last report covering the whole run.
+	 *
+	 * @throws IOException
+	 */
+	void close() throws IOException {
+		if (reporter == null) {
+			return;
+		}
+		reporter.shutdown();
+		try {
+			reporter.awaitTermination(intervalSeconds, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		report(true);
+		writer.close();
+		reporter = null;
+	}
+
+	private void reportQuietly() {
+		try {
+			report(false);
+		} catch (IOException e) {
+			System.err.println("Failed to write metrics to " + metricsFile + ": " + e.getMessage());
+		}
+	}
+
+	private synchronized void report(boolean summary) throws IOException {
+		long now = System.nanoTime();
+		long totalLoaded = loaded.sum();
+		long totalFailed = failed.sum();
+		long totalParseNanos = parseNanos.sum();
+		long totalEngineNanos = engineNanos.sum();
+		long[] latencies = engineLatency.snapshot();
+		long totalRedone = redone.sum();
+
+		long[] since = summary ? null : lastLatencies;
+		long intervalMax = engineLatency.takeMax();
+		maxLatency = Math.max(maxLatency, intervalMax);
+		long records = totalLoaded + totalFailed - (summary ? 0 : lastLoaded + lastFailed);
+		double seconds = (now - (summary ? startNanos : lastNanos)) / 1e9;
+
+		JsonObjectBuilder line = Json.createObjectBuilder();
+		line.add("timestamp", System.currentTimeMillis());
+		line.add("type", summary ? "summary" : "interval");
+		line.add("elapsedSeconds", round((now - startNanos) / 1e9));
+		line.add("records", records);
+		line.add("failures", totalFailed - (summary ? 0 : lastFailed));
+		line.add("recordsPerSecond", round(seconds > 0 ? records / seconds : 0));
+		line.add("totalRecords", totalLoaded + totalFailed);
+		line.add("totalFailures", totalFailed);
+		line.add("parseMs", round((totalParseNanos - (summary ? 0 : lastParseNanos)) / NANOS_PER_MILLI));
+		line.add("engineMs", round((totalEngineNanos - (summary ? 0 : lastEngineNanos)) / NANOS_PER_MILLI));
+		line.add("engineLatencyMs",
+				Json.createObjectBuilder()
+						.add("p50", round(LatencyHistogram.percentile(since, latencies, 50) / NANOS_PER_MILLI))
+						.add("p99", round(LatencyHistogram.percentile(since, latencies, 99) / NANOS_PER_MILLI))
+						.add("max", round((summary ? maxLatency : intervalMax) / NANOS_PER_MILLI)));
+		line.add("queueDepth", queueDepth.getAsInt());
+		IntSupplier limit = concurrencyLimit;
+		if (limit != null) {
+			line.add("concurrencyLimit", limit.getAsInt());
+		}
+		LongSupplier backlog = redoBacklog;
+		if (backlog != null) {
+			long redoRecords = totalRedone - (summary ? 0 : lastRedone);
+			line.add("redoRecords", redoRecords);
+			line.add("redoRecordsPerSecond", round(seconds > 0 ? redoRecords / seconds : 0));
+			line.add("redoBacklog", backlog.getAsLong());
+		}
+		if (summary && !startupMillis.isEmpty()) {
+			JsonObjectBuilder startup = Json.createObjectBuilder();
+			startupMillis.forEach(startup::add);
+			line.add("startupMs", startup);
+		}
+
+		writer.write(line.build().toString());
+		writer.newLine();
+		writer.flush();
+
+		lastNanos = now;
+		lastLoaded = totalLoaded;
+		lastFailed = totalFailed;
+		lastParseNanos = totalParseNanos;
+		lastEngineNanos = totalEngineNanos;
+		lastRedone = totalRedone;
+		lastLatencies = latencies;
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 1000) / 1000.0;
+	}
+}
@@ -0,0 +1,344 @@
+package com.senzing.g2loader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Loads records pushed over HTTP, so services send records to a resident loader
+ * instead of starting one, with its engine, for every file.
+ * <p>
+ * POST /records takes newline delimited JSON records and answers with a JSON
+ * line per record, in order, once all of them have been loaded or have failed:
+ * {"line":1,"status":"loaded"} or {"line":2,"status":"failed","errorCode":...,
+ * "message":...}. GET /status answers with the counts of the server.
+ * <p>
+ * The records of the requests that arrive while the previous ones are handed
+ * over are grouped into one batch, handed to the loader on a single thread. A
+ * request is only accepted when its records fit in the records the server holds
+ * at most, otherwise it is answered with 429 at once and can be sent again
+ * later. Responses are written on threads of their own, so neither a slow client
+ * nor the engine holds up the other. The server listens on the loopback address
+ * only.
+ */
+class LoadServer {
+
+	static final String RECORDS_PATH = "/records";
+	static final String STATUS_PATH = "/status";
+
+	private static final String CONTENT_TYPE = "application/x-ndjson";
+	private static final int HTTP_THREADS = 4;
+	private static final int RESPONSE_THREADS = 4;
+	private static final int RETRY_AFTER_SECONDS = 1;
+
+	// Request telling the dispatcher the server is stopping
+	private static final Request END_OF_REQUESTS = new Request(null, new ArrayList<>());
+
+	private final RecordLoader loader;
+	private final int port;
+	private final int capacity;
+	private final Semaphore permits;
+	private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+	private final AtomicInteger pendingRequests = new AtomicInteger(0);
+
+	private final AtomicLong accepted = new AtomicLong(0);
+	private final AtomicLong rejected = new AtomicLong(0);
+	private final AtomicLong loaded = new AtomicLong(0);
+	private final AtomicLong failed = new AtomicLong(0);
+	private final AtomicLong batches = new AtomicLong(0);
+
+	private HttpServer server;
+	private ExecutorService httpExecutor;
+	private ExecutorService responseExecutor;
+	private Thread dispatcher;
+	// Set under the lock of the server, which requests are accepted under
+	private volatile boolean stopping;
+
+	/**
+	 * @param loader   Loader the records are loaded through, started
+	 * @param port     Port to listen on
+	 * @param capacity Records held at most, queued or being loaded
+	 */
+	LoadServer(RecordLoader loader, int port, int capacity) {
+		this.loader = loader;
+		this.port = port;
+		this.capacity = capacity;
+		this.permits = new Semaphore(capacity);
+	}
+
+	/**
+	 * Starts listening.
+	 *
+	 * @throws IOException if the port cannot be listened on
+	 */
+	void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		httpExecutor = Executors.newFixedThreadPool(HTTP_THREADS, r -> new Thread(r, "g2loader-serve-http"));
+		responseExecutor = Executors.newFixedThreadPool(RESPONSE_THREADS,
+				r -> new Thread(r, "g2loader-serve-responses"));
+		server.setExecutor(httpExecutor);
+		server.createContext(RECORDS_PATH, this::handleRecords);
+		server.createContext(STATUS_PATH, this::handleStatus);
+		dispatcher = new Thread(this::dispatch, "g2loader-serve-dispatcher");
+		dispatcher.start();
+		server.start();
+	}
+
+	/**
+	 * @return Port the server listens on
+	 */
+	int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops taking requests, waits for the accepted ones to be answered and stops
+	 * the server. The loader is left to be finished.
+	 *
+	 * @param timeoutMillis Longest wait for the accepted requests
+	 */
+	void stop(long timeoutMillis) throws InterruptedException {
+		synchronized (this) {
+			// No request is accepted after this, so the ones pending are all counted
+			stopping = true;
+		}
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (pendingRequests.get() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		requests.put(END_OF_REQUESTS);
+		dispatcher.join();
+		server.stop(0);
+		httpExecutor.shutdown();
+		responseExecutor.shutdown();
+		responseExecutor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	long getAccepted() {
+		return accepted.get();
+	}
+
+	long getRejected() {
+		return rejected.get();
+	}
+
+	long getLoaded() {
+		return loaded.get();
+	}
+
+	long getFailed() {
+		return failed.get();
+	}
+
+	long getBatches() {
+		return batches.get();
+	}
+
+	private void handleRecords(HttpExchange exchange) throws IOException {
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				sendError(exchange, 405, "Records are sent with POST");
+				return;
+			}
+			if (stopping) {
+				sendError(exchange, 503, "The server is stopping");
+				return;
+			}
+			List<String> records = new ArrayList<>();
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (!line.trim().isEmpty()) {
+						// Refused before the rest of the body is held in memory
+						if (records.size() == capacity) {
+							sendError(exchange, 413, "At most " + capacity + " records are taken in a request");
+							return;
+						}
+						records.add(line);
+					}
+				}
+			}
+			Request request = accept(exchange, records);
+			if (request != null && records.isEmpty()) {
+				respond(request);
+			}
+		} catch (IOException | RuntimeException e) {
+			exchange.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Accepts a request unless the server is stopping or full, answering it
+	 * otherwise. Accepted requests with records are queued for the dispatcher.
+	 *
+	 * @return The accepted request, or null
+	 */
+	private Request accept(HttpExchange exchange, List<String> records) throws IOException {
+		int status;
+		synchronized (this) {
+			if (stopping) {
+				status = 503;
+			} else if (!permits.tryAcquire(records.size())) {
+				status = 429;
+			} else {
+				accepted.incrementAndGet();
+				pendingRequests.incrementAndGet();
+				Request request = new Request(exchange, records);
+				if (!records.isEmpty()) {
+					requests.add(request);
+				}
+				return request;
+			}
+		}
+		if (status == 503) {
+			sendError(exchange, 503, "The server is stopping");
+		} else {
+			rejected.incrementAndGet();
+			exchange.getResponseHeaders().set("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+			sendError(exchange, 429, "The queue is full");
+		}
+		return null;
+	}
+
+	private void handleStatus(HttpExchange exchange) throws IOException {
+		JsonObjectBuilder status = Json.createObjectBuilder().add("accepted", accepted.get())
+				.add("rejected", rejected.get()).add("loaded", loaded.get()).add("failed", failed.get())
+				.add("batches", batches.get()).add("queued", capacity - permits.availablePermits())
+				.add("capacity", capacity);
+		send(exchange, 200, "application/json", status.build().toString() + "\n");
+	}
+
+	/**
+	 * Hands the records of the accepted requests to the loader, all the requests
+	 * waiting at once as a batch.
+	 */
+	private void dispatch() {
+		List<Request> batch = new ArrayList<>();
+		try {
+			while (true) {
+				batch.clear();
+				batch.add(requests.take());
+				requests.drainTo(batch);
+				if (batch.get(0) != END_OF_REQUESTS) {
+					batches.incrementAndGet();
+				}
+				for (Request request : batch) {
+					if (request == END_OF_REQUESTS) {
+						return;
+					}
+					for (int i = 0; i < request.records.size(); i++) {
+						int index = i;
+						try {
+							loader.submit(i + 1, request.records.get(i), failure -> request.completed(this, index, failure));
+						} catch (InterruptedException e) {
+							throw e;
+						} catch (Exception e) {
+							request.completed(this, index, e);
+						}
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void completed(Exception failure) {
+		permits.release();
+		if (failure == null) {
+			loaded.incrementAndGet();
+		} else {
+			failed.incrementAndGet();
+		}
+	}
+
+	private void respond(Request request) {
+		responseExecutor.execute(() -> {
+			try {
+				StringBuilder body = new StringBuilder();
+				for (int i = 0; i < request.records.size(); i++) {
+					JsonObjectBuilder result = Json.createObjectBuilder().add("line", i + 1);
+					Exception failure = request.failures[i];
+					if (failure == null) {
+						result.add("status", "loaded");
+					} else {
+						result.add("status", "failed");
+						result.add("errorCode",
+								failure instanceof RecordException ? ((RecordException) failure).getErrorCode() : 0);
+						if (failure.getMessage() != null) {
+							result.add("message", failure.getMessage());
+						}
+					}
+					body.append(result.build().toString()).append('\n');
+				}
+				send(request.exchange, 200, CONTENT_TYPE, body.toString());
+			} catch (IOException e) {
+				// The client is gone
+			} finally {
+				pendingRequests.decrementAndGet();
+			}
+		});
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		send(exchange, status, "application/json",
+				Json.createObjectBuilder().add("error", message).build().toString() + "\n");
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+
+	private static class Request {
+		final HttpExchange exchange;
+		final List<String> records;
+		final Exception[] failures;
+		final AtomicInteger remaining;
+
+		Request(HttpExchange exchange, List<String> records) {
+			this.exchange = exchange;
+			this.records = records;
+			this.failures = new Exception[records.size()];
+			this.remaining = new AtomicInteger(records.size());
+		}
+
+		/**
+		 * Records the outcome of a record, answering the request after the last.
+		 */
+		void completed(LoadServer server, int index, Exception failure) {
+			failures[index] = failure;
+			server.completed(failure);
+			if (remaining.decrementAndGet() == 0) {
+				server.respond(this);
+			}
+		}
+	}
+}
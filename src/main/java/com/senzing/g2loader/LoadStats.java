@@ -0,0 +1,88 @@
+package com.senzing.g2loader;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the records of one input of a load.
+ */
+class LoadStats {
+
+	private final String name;
+	private final AtomicInteger total = new AtomicInteger(0);
+	private final AtomicInteger failed = new AtomicInteger(0);
+	private final AtomicInteger skipped = new AtomicInteger(0);
+	private volatile long readMillis;
+	private volatile BitSet superseded;
+
+	/**
+	 * @param name Name of the input
+	 */
+	LoadStats(String name) {
+		this.name = name;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	int getTotal() {
+		return total.get();
+	}
+
+	int getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * @return Number of records skipped as a later record has the same keys
+	 */
+	int getSkipped() {
+		return skipped.get();
+	}
+
+	/**
+	 * Sets the lines of the records that are superseded by a later record with the
+	 * same keys, which are skipped. Set before the input is read and not changed
+	 * afterwards, so the reading threads can share it.
+	 *
+	 * @param superseded Superseded lines
+	 */
+	void setSuperseded(BitSet superseded) {
+		this.superseded = superseded;
+	}
+
+	/**
+	 * Counts the record of a line as skipped when it is superseded.
+	 *
+	 * @param lineNumber Line of the record
+	 * @return Whether the record is skipped
+	 */
+	boolean skipSuperseded(long lineNumber) {
+		BitSet lines = superseded;
+		if (lines == null || lineNumber > Integer.MAX_VALUE || !lines.get((int) lineNumber)) {
+			return false;
+		}
+		skipped.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @return Milliseconds it took to read the input
+	 */
+	long getReadMillis() {
+		return readMillis;
+	}
+
+	void setReadMillis(long readMillis) {
+		this.readMillis = readMillis;
+	}
+
+	void recordProcessed() {
+		total.incrementAndGet();
+	}
+
+	void recordFailed() {
+		failed.incrementAndGet();
+	}
+}
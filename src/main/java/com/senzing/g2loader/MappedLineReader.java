@@ -0,0 +1,231 @@
+package com.senzing.g2loader;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads UTF-8 lines from a file through a memory mapped window that slides over
+ * the file, so files of any size can be read with a bounded mapping. Line breaks
+ * are found directly in the mapped bytes and only the returned lines are
+ * decoded. Lines end with "\n" or "\r\n", a leading byte order mark is skipped.
+ */
+class MappedLineReader implements LineReader {
+
+	static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private static final long NEWLINES = 0x0a0a0a0a0a0a0a0aL;
+	private static final long LOW_SEVEN_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+	private final FileChannel channel;
+	private final long end;
+	private final int windowSize;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private int windowLength;
+	private long position;
+	private byte[] lineBytes = new byte[1024];
+
+	/**
+	 * Opens a file for reading with the default window size.
+	 *
+	 * @param file File to read
+	 *
+	 * @throws IOException
+	 */
+	MappedLineReader(Path file) throws IOException {
+		this(file, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Opens a file for reading.
+	 *
+	 * @param file       File to read
+	 * @param windowSize Number of bytes mapped at a time. The window grows when a
+	 *                   single line does not fit.
+	 *
+	 * @throws IOException
+	 */
+	MappedLineReader(Path file, int windowSize) throws IOException {
+		this(file, 0, Long.MAX_VALUE, windowSize);
+	}
+
+	/**
+	 * Opens a byte range of a file for reading. The range should start at the
+	 * beginning of a line.
+	 *
+	 * @param file       File to read
+	 * @param start      Byte offset of the first line to read
+	 * @param end        Byte offset the reading stops at, capped at the file size
+	 * @param windowSize Number of bytes mapped at a time. The window grows when a
+	 *                   single line does not fit.
+	 *
+	 * @throws IOException
+	 */
+	MappedLineReader(Path file, long start, long end, int windowSize) throws IOException {
+		this(FileChannel.open(file, StandardOpenOption.READ), start, end, windowSize);
+	}
+
+	/**
+	 * Reads a byte range of a file that is already open. The channel is closed
+	 * with the reader, its position is not used.
+	 *
+	 * @param channel    Channel of the file to read
+	 * @param start      Byte offset of the first line to read
+	 * @param end        Byte offset the reading stops at, capped at the file size
+	 * @param windowSize Number of bytes mapped at a time. The window grows when a
+	 *                   single line does not fit.
+	 *
+	 * @throws IOException
+	 */
+	MappedLineReader(FileChannel channel, long start, long end, int windowSize) throws IOException {
+		this.channel = channel;
+		this.end = Math.min(end, channel.size());
+		this.windowSize = windowSize;
+		this.position = start;
+		if (start == 0) {
+			skipByteOrderMark();
+		}
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		if (position >= end) {
+			return null;
+		}
+		int lineStart = offsetInWindow(position, 1);
+		int newline = indexOfNewline(lineStart);
+		while (newline < 0 && windowStart + windowLength < end) {
+			// The line runs past the window, map again from the start of the line
+			map(position, Math.max(windowSize, windowLength * 2L));
+			lineStart = 0;
+			newline = indexOfNewline(lineStart);
+		}
+
+		int lineEnd = newline < 0 ? windowLength : newline;
+		position = windowStart + (newline < 0 ? windowLength : newline + 1);
+		if (lineEnd > lineStart && window.get(lineEnd - 1) == '\r') {
+			lineEnd--;
+		}
+		return decode(lineStart, lineEnd - lineStart);
+	}
+
+	/**
+	 * Counts the lines from the current position to the end of the range without
+	 * decoding them. The reader is at the end of the range afterwards.
+	 *
+	 * @return Number of lines, including a last line without a line break
+	 *
+	 * @throws IOException
+	 */
+	long countLines() throws IOException {
+		long lines = 0;
+		boolean endsWithNewline = true;
+		while (position < end) {
+			int offset = offsetInWindow(position, 1);
+			lines += countNewlines(offset);
+			endsWithNewline = window.get(windowLength - 1) == '\n';
+			position = windowStart + windowLength;
+		}
+		return endsWithNewline ? lines : lines + 1;
+	}
+
+	@Override
+	public long getPosition() {
+		return position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	private void skipByteOrderMark() throws IOException {
+		if (end >= 3) {
+			int offset = offsetInWindow(0, 3);
+			if ((window.get(offset) & 0xff) == 0xef && (window.get(offset + 1) & 0xff) == 0xbb
+					&& (window.get(offset + 2) & 0xff) == 0xbf) {
+				position = 3;
+			}
+		}
+	}
+
+	/**
+	 * Returns the offset of a file position in the window, moving the window when
+	 * fewer than the required number of bytes are mapped from there.
+	 */
+	private int offsetInWindow(long filePosition, int required) throws IOException {
+		if (window == null || filePosition < windowStart
+				|| filePosition + required > windowStart + windowLength) {
+			map(filePosition, windowSize);
+		}
+		return (int) (filePosition - windowStart);
+	}
+
+	private void map(long start, long length) throws IOException {
+		length = Math.min(length, end - start);
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Line at byte " + start + " is too long");
+		}
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		window.order(ByteOrder.LITTLE_ENDIAN);
+		windowStart = start;
+		windowLength = (int) length;
+	}
+
+	/**
+	 * Finds the next '\n' in the window, eight bytes at a time.
+	 */
+	private int indexOfNewline(int from) {
+		int i = from;
+		for (; i + Long.BYTES <= windowLength; i += Long.BYTES) {
+			long found = newlineBits(window.getLong(i));
+			if (found != 0) {
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+			}
+		}
+		for (; i < windowLength; i++) {
+			if (window.get(i) == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int countNewlines(int from) {
+		int count = 0;
+		int i = from;
+		for (; i + Long.BYTES <= windowLength; i += Long.BYTES) {
+			count += Long.bitCount(newlineBits(window.getLong(i)));
+		}
+		for (; i < windowLength; i++) {
+			if (window.get(i) == '\n') {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Sets the high bit of every byte of the word that is a '\n', and only those.
+	 */
+	private static long newlineBits(long word) {
+		long bytes = word ^ NEWLINES;
+		return ~(((bytes & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | bytes | LOW_SEVEN_BITS);
+	}
+
+	private String decode(int offset, int length) {
+		if (lineBytes.length < length) {
+			lineBytes = new byte[Math.max(length, lineBytes.length * 2)];
+		}
+		window.position(offset);
+		window.get(lineBytes, 0, length);
+		return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+	}
+}
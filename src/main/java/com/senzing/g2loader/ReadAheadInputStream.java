@@ -0,0 +1,135 @@
+package com.senzing.g2loader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a stream ahead on a background thread, e.g. to decompress a file while
+ * the records already decompressed are parsed and loaded. The data is handed
+ * over in a few reused chunks.
+ */
+class ReadAheadInputStream extends InputStream {
+
+	private static final int CHUNK_SIZE = 1024 * 1024;
+	private static final int CHUNKS = 4;
+
+	private final InputStream source;
+	private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(CHUNKS);
+	private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(CHUNKS + 1);
+	private final Thread reader;
+
+	private Chunk current;
+	private int offset;
+	private volatile boolean closed = false;
+
+	ReadAheadInputStream(InputStream source) {
+		this.source = source;
+		for (int i = 0; i < CHUNKS; i++) {
+			free.add(new byte[CHUNK_SIZE]);
+		}
+		reader = new Thread(this::readAhead, "g2loader-read-ahead");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextChunk()) {
+			return -1;
+		}
+		return current.data[offset++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextChunk()) {
+			return -1;
+		}
+		int count = Math.min(len, current.length - offset);
+		System.arraycopy(current.data, offset, b, off, count);
+		offset += count;
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		reader.interrupt();
+		source.close();
+	}
+
+	/**
+	 * Makes sure the current chunk has unread data.
+	 *
+	 * @return false at the end of the stream
+	 */
+	private boolean nextChunk() throws IOException {
+		if (current != null && offset < current.length) {
+			return true;
+		}
+		if (current != null && current.error == null && current.length >= 0) {
+			free.offer(current.data);
+		}
+		try {
+			current = filled.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		offset = 0;
+		if (current.error != null) {
+			filled.offer(current);
+			throw new IOException(current.error.getMessage(), current.error);
+		}
+		if (current.length < 0) {
+			// Keep returning the end of the stream
+			filled.offer(current);
+			return false;
+		}
+		return true;
+	}
+
+	private void readAhead() {
+		try {
+			while (!closed) {
+				byte[] data = free.take();
+				int length = 0;
+				int read = 0;
+				while (length < data.length && (read = source.read(data, length, data.length - length)) >= 0) {
+					length += read;
+				}
+				if (length > 0) {
+					filled.put(new Chunk(data, length, null));
+				}
+				if (read < 0) {
+					filled.put(new Chunk(null, -1, null));
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			// Closed
+		} catch (IOException | RuntimeException e) {
+			if (!closed) {
+				filled.offer(new Chunk(null, -1, e));
+			}
+		}
+	}
+
+	private static class Chunk {
+		final byte[] data;
+		final int length;
+		final Exception error;
+
+		Chunk(byte[] data, int length, Exception error) {
+			this.data = data;
+			this.length = length;
+			this.error = error;
+		}
+	}
+}
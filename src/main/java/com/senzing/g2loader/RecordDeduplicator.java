@@ -0,0 +1,225 @@
+package com.senzing.g2loader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Finds the records of a file that are repeated later in it with the same
+ * DATA_SOURCE and RECORD_ID, so only the last version of every record is
+ * loaded. The keys are fed in file order and reduced to 64 bit hashes kept in a
+ * primitive hash table with the line they were last seen on.
+ * <p>
+ * When the table is full its entries and the keys that follow are spilled to
+ * temporary partition files by hash, and every partition is resolved on its own
+ * at the end, so the memory used stays bounded whatever the number of records.
+ * The result is a bit per line, set for the lines superseded by a later one.
+ * Two different keys sharing a hash would be taken for the same record, which
+ * with 64 bit hashes is unlikely even for billions of keys.
+ */
+class RecordDeduplicator implements KeyScanner.KeyConsumer {
+
+	static final int DEFAULT_MAX_KEYS = 2 * 1024 * 1024;
+
+	private static final int PARTITION_BITS = 8;
+	private static final int SPILL_BUFFER_SIZE = 64 * 1024;
+	private static final int INITIAL_CAPACITY = 1 << 16;
+
+	private final int maxKeys;
+	private final BitSet superseded = new BitSet();
+
+	// Open addressing table, a line of 0 marks an empty slot
+	private long[] hashes = new long[INITIAL_CAPACITY];
+	private long[] lines = new long[INITIAL_CAPACITY];
+	private int size;
+
+	private Path spillDirectory;
+	private DataOutputStream[] partitions;
+
+	/**
+	 * @param maxKeys Keys held in memory before spilling to disk
+	 */
+	RecordDeduplicator(int maxKeys) {
+		this.maxKeys = maxKeys;
+	}
+
+	/**
+	 * Reads the keys of a file and finds its superseded records.
+	 *
+	 * @param file Data file
+	 * @return The superseded lines
+	 *
+	 * @throws Exception
+	 */
+	static BitSet findSuperseded(Path file) throws Exception {
+		RecordDeduplicator deduplicator = new RecordDeduplicator(DEFAULT_MAX_KEYS);
+		try {
+			KeyScanner.scan(file, deduplicator);
+			return deduplicator.finish();
+		} finally {
+			deduplicator.deleteSpillFiles();
+		}
+	}
+
+	@Override
+	public void accept(long lineNumber, String dataSource, String recordID) throws IOException {
+		if (dataSource == null || recordID == null || lineNumber > Integer.MAX_VALUE) {
+			// Fails to load, or is past the lines that can be marked, either way loaded as is
+			return;
+		}
+		long hash = hash(dataSource, recordID);
+		if (partitions == null && size >= maxKeys) {
+			spill();
+		}
+		if (partitions != null) {
+			write(hash, lineNumber);
+		} else {
+			put(hash, lineNumber);
+		}
+	}
+
+	/**
+	 * Resolves the spilled partitions, if any.
+	 *
+	 * @return The superseded lines
+	 *
+	 * @throws IOException
+	 */
+	BitSet finish() throws IOException {
+		if (partitions == null) {
+			return superseded;
+		}
+		for (DataOutputStream partition : partitions) {
+			partition.close();
+		}
+		for (int i = 0; i < partitions.length; i++) {
+			clear();
+			Path file = partitionFile(i);
+			try (DataInputStream input = new DataInputStream(
+					new BufferedInputStream(Files.newInputStream(file), SPILL_BUFFER_SIZE))) {
+				while (true) {
+					long hash;
+					try {
+						hash = input.readLong();
+					} catch (EOFException e) {
+						break;
+					}
+					put(hash, input.readLong());
+				}
+			}
+			Files.delete(file);
+		}
+		clear();
+		return superseded;
+	}
+
+	/**
+	 * Removes the spill files left by a scan that failed.
+	 */
+	void deleteSpillFiles() throws IOException {
+		if (spillDirectory == null) {
+			return;
+		}
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i].close();
+			Files.deleteIfExists(partitionFile(i));
+		}
+		Files.deleteIfExists(spillDirectory);
+		spillDirectory = null;
+	}
+
+	/**
+	 * Hashes the keys of a record with 64 bit FNV-1a over their characters,
+	 * finished with the MurmurHash3 mix so every bit depends on every character.
+	 */
+	static long hash(String dataSource, String recordID) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < dataSource.length(); i++) {
+			hash = (hash ^ dataSource.charAt(i)) * 0x100000001b3L;
+		}
+		// Separates the keys, so "AB"+"C" and "A"+"BC" differ
+		hash = (hash ^ 0xffff) * 0x100000001b3L;
+		for (int i = 0; i < recordID.length(); i++) {
+			hash = (hash ^ recordID.charAt(i)) * 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private void put(long hash, long line) {
+		int mask = hashes.length - 1;
+		int slot = (int) hash & mask;
+		while (lines[slot] != 0) {
+			if (hashes[slot] == hash) {
+				superseded.set((int) Math.min(lines[slot], line));
+				lines[slot] = Math.max(lines[slot], line);
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		hashes[slot] = hash;
+		lines[slot] = line;
+		if (++size > hashes.length / 2) {
+			grow();
+		}
+	}
+
+	private void grow() {
+		long[] oldHashes = hashes;
+		long[] oldLines = lines;
+		hashes = new long[oldHashes.length * 2];
+		lines = new long[oldLines.length * 2];
+		size = 0;
+		for (int i = 0; i < oldHashes.length; i++) {
+			if (oldLines[i] != 0) {
+				put(oldHashes[i], oldLines[i]);
+			}
+		}
+	}
+
+	private void clear() {
+		Arrays.fill(lines, 0);
+		size = 0;
+	}
+
+	private void spill() throws IOException {
+		spillDirectory = Files.createTempDirectory("g2loader-dedup");
+		partitions = new DataOutputStream[1 << PARTITION_BITS];
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i] = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(partitionFile(i)), SPILL_BUFFER_SIZE));
+		}
+		long[] spilledHashes = hashes;
+		long[] spilledLines = lines;
+		// The table is refilled one partition at a time at the end
+		hashes = new long[INITIAL_CAPACITY];
+		lines = new long[INITIAL_CAPACITY];
+		size = 0;
+		for (int i = 0; i < spilledHashes.length; i++) {
+			if (spilledLines[i] != 0) {
+				write(spilledHashes[i], spilledLines[i]);
+			}
+		}
+	}
+
+	private void write(long hash, long line) throws IOException {
+		DataOutputStream partition = partitions[(int) (hash >>> (Long.SIZE - PARTITION_BITS))];
+		partition.writeLong(hash);
+		partition.writeLong(line);
+	}
+
+	private Path partitionFile(int partition) {
+		return spillDirectory.resolve("partition-" + partition);
+	}
+}
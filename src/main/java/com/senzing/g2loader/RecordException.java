@@ -0,0 +1,28 @@
+package com.senzing.g2loader;
+
+/**
+ * Failure of the engine to process a record, with the error code the engine
+ * reported.
+ */
+class RecordException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int errorCode;
+
+	/**
+	 * @param message   Message of the failure
+	 * @param errorCode Error code reported by the engine
+	 */
+	RecordException(String message, int errorCode) {
+		super(message);
+		this.errorCode = errorCode;
+	}
+
+	/**
+	 * @return Error code reported by the engine
+	 */
+	int getErrorCode() {
+		return errorCode;
+	}
+}
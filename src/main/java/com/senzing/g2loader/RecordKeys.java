@@ -0,0 +1,101 @@
+package com.senzing.g2loader;
+
+import java.io.StringReader;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+
+/**
+ * The keys identifying a record in the repository.
+ */
+class RecordKeys {
+
+	static final String DATA_SOURCE = "DATA_SOURCE";
+	static final String RECORD_ID = "RECORD_ID";
+
+	private static final JsonParserFactory parserFactory = Json.createParserFactory(null);
+
+	final String dataSource;
+	final String recordID;
+
+	RecordKeys(String dataSource, String recordID) {
+		this.dataSource = dataSource;
+		this.recordID = recordID;
+	}
+
+	/**
+	 * Reads DATA_SOURCE and RECORD_ID from the top level of a JSON record. The
+	 * record is streamed through a parser that stops as soon as both keys have been
+	 * seen, nothing else in the record is materialized.
+	 *
+	 * @param record JSON record
+	 * @return Keys of the record, null for a key that is missing or not a string
+	 *
+	 * @throws Exception if the record is not a JSON object
+	 */
+	static RecordKeys fromJson(String record) throws Exception {
+		String dataSource = null;
+		String recordID = null;
+
+		try (JsonParser parser = parserFactory.createParser(new StringReader(record))) {
+			if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+				throw new Exception("Record is not a JSON object");
+			}
+			while (parser.hasNext()) {
+				Event event = parser.next();
+				if (event != Event.KEY_NAME) {
+					break;
+				}
+				String key = parser.getString();
+				event = parser.next();
+				if (RECORD_ID.equals(key)) {
+					recordID = event == Event.VALUE_STRING ? parser.getString() : null;
+				} else if (DATA_SOURCE.equals(key)) {
+					dataSource = event == Event.VALUE_STRING ? parser.getString() : null;
+				}
+				if (recordID != null && dataSource != null) {
+					break;
+				}
+				skipValue(parser, event);
+			}
+		}
+
+		return new RecordKeys(dataSource, recordID);
+	}
+
+	/**
+	 * Reads DATA_SOURCE and RECORD_ID from a record that has already been parsed.
+	 *
+	 * @param record JSON record
+	 * @return Keys of the record, null for a key that is missing or not a string
+	 */
+	static RecordKeys fromObject(JsonObject record) {
+		return new RecordKeys(stringValue(record, DATA_SOURCE), stringValue(record, RECORD_ID));
+	}
+
+	private static String stringValue(JsonObject record, String key) {
+		JsonValue value = record.get(key);
+		return value != null && value.getValueType() == JsonValue.ValueType.STRING ? ((JsonString) value).getString()
+				: null;
+	}
+
+	private static void skipValue(JsonParser parser, Event event) {
+		if (event != Event.START_OBJECT && event != Event.START_ARRAY) {
+			return;
+		}
+		int depth = 1;
+		while (depth > 0) {
+			event = parser.next();
+			if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+				depth++;
+			} else if (event == Event.END_OBJECT || event == Event.END_ARRAY) {
+				depth--;
+			}
+		}
+	}
+}
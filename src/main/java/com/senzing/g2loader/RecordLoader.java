@@ -0,0 +1,644 @@
+package com.senzing.g2loader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends records to a {@link G2LoaderHandler} from a pool of worker threads.
+ * Records are handed over through a bounded queue so a reader that gets ahead
+ * of the engine blocks instead of buffering the whole input. With a single
+ * thread the records are loaded directly on the calling thread.
+ * <p>
+ * With an affinity key every worker has a queue of its own, its lane, and
+ * records are put in the lane picked by the hash of their key, so records
+ * sharing a key are loaded one after the other in the order they were read.
+ */
+public class RecordLoader {
+
+	static final int QUEUED_RECORDS_PER_THREAD = 64;
+	static final long RETRY_BACKOFF_MILLIS = 100;
+	static final long MAX_RETRY_BACKOFF_MILLIS = 30_000;
+	// Doublings past which the backoff is over the maximum, and the shift would overflow later
+	private static final int MAX_RETRY_BACKOFF_DOUBLINGS = 20;
+
+	private static final PendingRecord END_OF_INPUT = new PendingRecord(null, -1, -1, null, null, null);
+
+	/**
+	 * Receives the outcome of a record, on the thread that loaded it.
+	 */
+	interface RecordCallback {
+		/**
+		 * @param failure Why the record failed, null when it was loaded
+		 */
+		void completed(Exception failure);
+	}
+
+	private final G2LoaderHandler handler;
+	private final int threads;
+	private final int queueSize;
+	private final BlockingQueue<PendingRecord> queue;
+	private final List<Thread> workers = new ArrayList<>();
+	private List<BlockingQueue<PendingRecord>> lanes;
+	private List<LaneStats> laneStats;
+	private AffinityKey affinityKey;
+
+	private final AtomicInteger total = new AtomicInteger(0);
+	private final AtomicInteger failed = new AtomicInteger(0);
+
+	private LoadCheckpoint checkpoint;
+	private LoadMetrics metrics;
+	private DeadLetterWriter deadLetters;
+	private ConcurrencyLimiter limiter;
+	private DeltaIndex deltaIndex;
+	private int maxFailures = 0;
+	private int retries = 0;
+	private Set<Integer> retryErrorCodes = Collections.emptySet();
+	private volatile boolean aborted = false;
+	private volatile FatalLoadException abortCause;
+
+	/**
+	 * Creates a loader using the default queue size for the number of threads.
+	 *
+	 * @param handler Handler the records are loaded through
+	 * @param threads Number of threads calling the engine
+	 */
+	public RecordLoader(G2LoaderHandler handler, int threads) {
+		this(handler, threads, threads * QUEUED_RECORDS_PER_THREAD);
+	}
+
+	/**
+	 * Creates a loader.
+	 *
+	 * @param handler   Handler the records are loaded through
+	 * @param threads   Number of threads calling the engine
+	 * @param queueSize Maximum number of records waiting for a worker
+	 */
+	public RecordLoader(G2LoaderHandler handler, int threads, int queueSize) {
+		this.handler = handler;
+		this.threads = Math.max(1, threads);
+		this.queueSize = Math.max(1, queueSize);
+		this.queue = this.threads > 1 ? new ArrayBlockingQueue<>(this.queueSize) : null;
+	}
+
+	/**
+	 * Schedules the records by a key, each worker loading the records of its own
+	 * lane. The queue is shared out between the lanes. Must be set before the
+	 * loader is started, and has no effect with a single thread.
+	 *
+	 * @param affinityKey Key records are scheduled by, or null to share one queue
+	 */
+	public void setAffinityKey(AffinityKey affinityKey) {
+		this.affinityKey = affinityKey;
+		if (affinityKey == null || queue == null) {
+			lanes = null;
+			laneStats = null;
+			return;
+		}
+		lanes = new ArrayList<>();
+		laneStats = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			lanes.add(new ArrayBlockingQueue<>(Math.max(1, queueSize / threads)));
+			laneStats.add(new LaneStats(i + 1));
+		}
+	}
+
+	/**
+	 * @return The counts of the lanes, or null without an affinity key. Complete
+	 *         once the loader has finished.
+	 */
+	public List<LaneStats> getLaneStats() {
+		return laneStats;
+	}
+
+	/**
+	 * Sets the checkpoint every record is registered with when it is submitted and
+	 * completed with once it has been processed. Records must then be submitted
+	 * from a single thread.
+	 *
+	 * @param checkpoint Checkpoint of the load, or null
+	 */
+	public void setCheckpoint(LoadCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * Sets the metrics loaded and failed records are counted in. The queue depth
+	 * of this loader is reported in them.
+	 *
+	 * @param metrics Metrics of the load, or null
+	 */
+	public void setMetrics(LoadMetrics metrics) {
+		this.metrics = metrics;
+		if (metrics != null) {
+			metrics.setQueueDepth(this::getQueueDepth);
+		}
+	}
+
+	/**
+	 * Sets where records that fail to load are written. Without it they are
+	 * printed to the console.
+	 *
+	 * @param deadLetters Dead-letter file, or null
+	 */
+	public void setDeadLetters(DeadLetterWriter deadLetters) {
+		this.deadLetters = deadLetters;
+	}
+
+	/**
+	 * Sets the limiter adapting the number of engine calls in flight. The number of
+	 * threads is then the most calls allowed in flight.
+	 *
+	 * @param limiter Limiter of the engine calls, or null
+	 */
+	public void setLimiter(ConcurrencyLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	/**
+	 * @return Limiter of the engine calls, or null
+	 */
+	public ConcurrencyLimiter getLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * Sets the number of failed records after which the load is aborted.
+	 *
+	 * @param maxFailures Failures allowed, 0 for no limit
+	 */
+	public void setMaxFailures(int maxFailures) {
+		this.maxFailures = maxFailures;
+	}
+
+	/**
+	 * Sets how records that fail in the engine are retried. The wait between
+	 * attempts doubles from {@link #RETRY_BACKOFF_MILLIS} up to
+	 * {@link #MAX_RETRY_BACKOFF_MILLIS}.
+	 *
+	 * @param retries    Number of retries of a record
+	 * @param errorCodes Engine error codes that are retried, empty for all
+	 */
+	public void setRetries(int retries, Set<Integer> errorCodes) {
+		this.retries = retries;
+		this.retryErrorCodes = errorCodes;
+	}
+
+	/**
+	 * Starts the worker threads. Does nothing when loading on the calling thread.
+	 */
+	public void start() {
+		if (queue == null) {
+			return;
+		}
+		for (int i = 0; i < threads; i++) {
+			Thread worker;
+			if (lanes != null) {
+				BlockingQueue<PendingRecord> lane = lanes.get(i);
+				LaneStats stats = laneStats.get(i);
+				worker = new Thread(() -> work(lane, stats), "g2loader-worker-" + (i + 1));
+			} else {
+				worker = new Thread(() -> work(queue, null), "g2loader-worker-" + (i + 1));
+			}
+			workers.add(worker);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Hands a record over for loading. Blocks while the queue is full.
+	 *
+	 * @param lineNumber Position of the record in the input, used for reporting
+	 * @param position   Position in the input just past the record
+	 * @param record     JSON record
+	 *
+	 * @throws Exception if the load was aborted
+	 */
+	public void submit(long lineNumber, long position, String record) throws Exception {
+		submit(new PendingRecord(null, lineNumber, position, null, null, record));
+	}
+
+	/**
+	 * Hands a record of one of several inputs over for loading. Blocks while the
+	 * queue is full.
+	 *
+	 * @param stats      Counts of the input the record is from
+	 * @param lineNumber Position of the record in the input, used for reporting
+	 * @param position   Position in the input just past the record
+	 * @param record     JSON record
+	 *
+	 * @throws Exception if the load was aborted
+	 */
+	public void submit(LoadStats stats, long lineNumber, long position, String record) throws Exception {
+		submit(new PendingRecord(stats, lineNumber, position, null, null, record));
+	}
+
+	/**
+	 * Hands a record whose keys are already known over for loading. Blocks while
+	 * the queue is full.
+	 *
+	 * @param lineNumber Position of the record in the input, used for reporting
+	 * @param position   Position in the input just past the record
+	 * @param dataSource Data source of the record
+	 * @param recordID   ID of the record
+	 * @param record     JSON record
+	 *
+	 * @throws Exception if the load was aborted
+	 */
+	public void submit(long lineNumber, long position, String dataSource, String recordID, String record)
+			throws Exception {
+		submit(new PendingRecord(null, lineNumber, position, dataSource, recordID, record));
+	}
+
+	/**
+	 * Hands a record of one of several inputs whose keys are already known over
+	 * for loading. Blocks while the queue is full.
+	 *
+	 * @param stats      Counts of the input the record is from
+	 * @param lineNumber Position of the record in the input, used for reporting
+	 * @param position   Position in the input just past the record
+	 * @param dataSource Data source of the record
+	 * @param recordID   ID of the record
+	 * @param record     JSON record
+	 *
+	 * @throws Exception if the load was aborted
+	 */
+	public void submit(LoadStats stats, long lineNumber, long position, String dataSource, String recordID,
+			String record) throws Exception {
+		submit(new PendingRecord(stats, lineNumber, position, dataSource, recordID, record));
+	}
+
+	/**
+	 * Hands a record over for loading and is told once it has been loaded or has
+	 * failed. Blocks while the queue is full.
+	 *
+	 * @param lineNumber Position of the record in the input, used for reporting
+	 * @param record     JSON record
+	 * @param callback   Receives the outcome of the record
+	 *
+	 * @throws Exception if the load was aborted
+	 */
+	void submit(long lineNumber, String record, RecordCallback callback) throws Exception {
+		PendingRecord pending = new PendingRecord(null, lineNumber, lineNumber, null, null, record);
+		pending.callback = callback;
+		submit(pending);
+	}
+
+	private void submit(PendingRecord pending) throws Exception {
+		if (pending.stats != null && pending.stats.skipSuperseded(pending.lineNumber)) {
+			return;
+		}
+		if (aborted) {
+			throw new Exception(getAbortMessage(), abortCause);
+		}
+		if (checkpoint != null) {
+			pending.sequence = checkpoint.register(pending.lineNumber, pending.position);
+		}
+		if (queue == null) {
+			process(pending);
+		} else if (lanes != null) {
+			pending = schedule(pending);
+			lanes.get((int) Math.floorMod(AffinityKey.hash(pending.affinityKey), (long) threads)).put(pending);
+		} else {
+			queue.put(pending);
+		}
+	}
+
+	/**
+	 * Finds the affinity key of a record. Records are parsed for it when their
+	 * keys are not known, and the keys found are kept so the record is not parsed
+	 * again when it is loaded.
+	 *
+	 * @return The record with its affinity key
+	 */
+	private PendingRecord schedule(PendingRecord pending) {
+		PendingRecord scheduled = pending;
+		String key = null;
+		if (affinityKey.isRecordKeys()) {
+			if (!pending.keysKnown) {
+				long start = System.nanoTime();
+				try {
+					RecordKeys keys = RecordKeys.fromJson(pending.record);
+					if (keys.dataSource != null || keys.recordID != null) {
+						scheduled = new PendingRecord(pending.stats, pending.lineNumber, pending.position,
+								keys.dataSource, keys.recordID, pending.record);
+						scheduled.sequence = pending.sequence;
+						scheduled.callback = pending.callback;
+					}
+				} catch (Exception e) {
+					// Fails to load, on any lane
+				}
+				if (metrics != null) {
+					metrics.recordParse(System.nanoTime() - start);
+				}
+			}
+			if (scheduled.keysKnown) {
+				key = AffinityKey.fromRecordKeys(scheduled.dataSource, scheduled.recordID);
+			}
+		} else {
+			try {
+				key = affinityKey.fromAttributes(pending.record);
+				if (key == null) {
+					RecordKeys keys = pending.keysKnown ? new RecordKeys(pending.dataSource, pending.recordID)
+							: RecordKeys.fromJson(pending.record);
+					key = AffinityKey.fromRecordKeys(keys.dataSource, keys.recordID);
+				}
+			} catch (Exception e) {
+				// Fails to load, on any lane
+			}
+		}
+		scheduled.affinityKey = key != null ? key : pending.record;
+		return scheduled;
+	}
+
+	/**
+	 * Signals the end of the input and waits for the workers to load every
+	 * record still queued.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void finish() throws InterruptedException {
+		if (queue == null) {
+			return;
+		}
+		if (lanes != null) {
+			for (BlockingQueue<PendingRecord> lane : lanes) {
+				lane.put(END_OF_INPUT);
+			}
+		} else {
+			for (int i = 0; i < workers.size(); i++) {
+				queue.put(END_OF_INPUT);
+			}
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		workers.clear();
+	}
+
+	/**
+	 * @return Number of threads calling the engine
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the index records are compared with before they are loaded, so records
+	 * loaded before with the same content are skipped.
+	 *
+	 * @param deltaIndex Index of the loaded records, or null to load every record
+	 */
+	public void setDeltaIndex(DeltaIndex deltaIndex) {
+		this.deltaIndex = deltaIndex;
+	}
+
+	/**
+	 * @return Whether the load was aborted after too many failures or a fatal
+	 *         one, leaving records neither loaded nor failed
+	 */
+	public boolean isAborted() {
+		return aborted;
+	}
+
+	/**
+	 * @return The failure the load was aborted on, or null
+	 */
+	FatalLoadException getAbortCause() {
+		return abortCause;
+	}
+
+	/**
+	 * @return Why the load was aborted
+	 */
+	String getAbortMessage() {
+		if (abortCause != null) {
+			return "Load aborted: " + abortCause.getMessage();
+		}
+		return "Load aborted after " + failed.get() + " failures, more than the " + maxFailures + " allowed";
+	}
+
+	public int getTotal() {
+		return total.get();
+	}
+
+	public int getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * @return Number of records waiting for a worker
+	 */
+	public int getQueueDepth() {
+		if (lanes != null) {
+			return lanes.stream().mapToInt(BlockingQueue::size).sum();
+		}
+		return queue == null ? 0 : queue.size();
+	}
+
+	private void work(BlockingQueue<PendingRecord> records, LaneStats stats) {
+		try {
+			while (true) {
+				PendingRecord pending = records.take();
+				if (pending == END_OF_INPUT) {
+					return;
+				}
+				if (stats != null) {
+					long start = System.nanoTime();
+					process(pending);
+					stats.record(pending.affinityKey, System.nanoTime() - start);
+				} else {
+					process(pending);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	void process(PendingRecord pending) {
+		if (aborted) {
+			// Neither loaded nor failed, a resumed load reads it again
+			if (pending.callback != null) {
+				pending.callback.completed(new Exception(getAbortMessage(), abortCause));
+			}
+			return;
+		}
+		RecordKeys deltaKeys = null;
+		long contentHash = 0;
+		try {
+			total.incrementAndGet();
+			if (pending.stats != null) {
+				pending.stats.recordProcessed();
+			}
+			if (deltaIndex != null) {
+				deltaKeys = getDeltaKeys(pending);
+				if (deltaKeys != null) {
+					contentHash = DeltaIndex.hash(pending.record);
+					if (deltaIndex.isUnchanged(deltaKeys.dataSource, deltaKeys.recordID, contentHash)) {
+						complete(pending);
+						return;
+					}
+				}
+			}
+			for (int attempt = 0;; attempt++) {
+				try {
+					addRecord(pending, deltaKeys);
+					break;
+				} catch (RecordException e) {
+					if (!isRetried(e, attempt)) {
+						throw e;
+					}
+					Thread.sleep(getRetryBackoffMillis(attempt));
+				}
+			}
+			if (deltaKeys != null) {
+				deltaIndex.recordLoaded(deltaKeys.dataSource, deltaKeys.recordID, contentHash);
+			}
+			if (metrics != null) {
+				metrics.recordLoaded();
+			}
+		} catch (FatalLoadException e) {
+			// Neither loaded nor failed, like the records after it
+			if (abortCause == null) {
+				abortCause = e;
+			}
+			aborted = true;
+			if (pending.callback != null) {
+				pending.callback.completed(e);
+			}
+			return;
+		} catch (Exception e) {
+			if (deltaKeys != null) {
+				try {
+					deltaIndex.recordFailed(deltaKeys.dataSource, deltaKeys.recordID);
+				} catch (Exception indexError) {
+					e.addSuppressed(indexError);
+				}
+			}
+			fail(pending, e);
+		}
+		complete(pending);
+	}
+
+	private void complete(PendingRecord pending) {
+		if (checkpoint != null) {
+			checkpoint.complete(pending.sequence);
+		}
+		if (pending.callback != null) {
+			pending.callback.completed(pending.failure);
+		}
+	}
+
+	/**
+	 * Finds the keys of a record for the delta index, parsing the record when they
+	 * are not known yet.
+	 *
+	 * @return The keys, or null when the record has none and fails to load anyway
+	 */
+	private RecordKeys getDeltaKeys(PendingRecord pending) {
+		RecordKeys keys;
+		if (pending.keysKnown) {
+			keys = new RecordKeys(pending.dataSource, pending.recordID);
+		} else {
+			long start = System.nanoTime();
+			try {
+				keys = RecordKeys.fromJson(pending.record);
+			} catch (Exception e) {
+				return null;
+			}
+			if (metrics != null) {
+				metrics.recordParse(System.nanoTime() - start);
+			}
+		}
+		return keys.dataSource != null && keys.recordID != null ? keys : null;
+	}
+
+	private void addRecord(PendingRecord pending, RecordKeys keys) throws Exception {
+		if (limiter != null) {
+			limiter.acquire();
+		}
+		long start = System.nanoTime();
+		try {
+			if (keys != null) {
+				handler.addRecord(keys.dataSource, keys.recordID, pending.record);
+			} else if (pending.keysKnown) {
+				handler.addRecord(pending.dataSource, pending.recordID, pending.record);
+			} else {
+				handler.addRecord(pending.record);
+			}
+		} finally {
+			if (limiter != null) {
+				limiter.release(System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * @param attempt Number of the failed attempt, from 0
+	 * @return Milliseconds to wait before the next attempt
+	 */
+	static long getRetryBackoffMillis(int attempt) {
+		return Math.min(RETRY_BACKOFF_MILLIS << Math.min(attempt, MAX_RETRY_BACKOFF_DOUBLINGS),
+				MAX_RETRY_BACKOFF_MILLIS);
+	}
+
+	private boolean isRetried(RecordException e, int attempt) {
+		return attempt < retries && (retryErrorCodes.isEmpty() || retryErrorCodes.contains(e.getErrorCode()));
+	}
+
+	private void fail(PendingRecord pending, Exception e) {
+		pending.failure = e;
+		int failures = failed.incrementAndGet();
+		if (pending.stats != null) {
+			pending.stats.recordFailed();
+		}
+		if (metrics != null) {
+			metrics.recordFailed();
+		}
+		if (e instanceof InterruptedException) {
+			Thread.currentThread().interrupt();
+		}
+		if (deadLetters != null) {
+			try {
+				deadLetters.add(pending.lineNumber, e, pending.record);
+			} catch (InterruptedException interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		} else {
+			System.err.println("FAILED: line " + pending.lineNumber + " [" + e.getMessage() + "] " + pending.record);
+		}
+		if (maxFailures > 0 && failures > maxFailures) {
+			aborted = true;
+		}
+	}
+
+	static class PendingRecord {
+		final LoadStats stats;
+		final long lineNumber;
+		final long position;
+		final boolean keysKnown;
+		final String dataSource;
+		final String recordID;
+		final String record;
+		long sequence;
+		String affinityKey;
+		RecordCallback callback;
+		Exception failure;
+
+		PendingRecord(LoadStats stats, long lineNumber, long position, String dataSource, String recordID,
+				String record) {
+			this.stats = stats;
+			this.lineNumber = lineNumber;
+			this.position = position;
+			this.keysKnown = dataSource != null || recordID != null;
+			this.dataSource = dataSource;
+			this.recordID = recordID;
+			this.record = record;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package com.senzing.g2loader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes the redo records the engine queued while loading, on a pool of
+ * threads each taking the next record from the queue until it is empty.
+ * <p>
+ * It can be started with the load. Workers that find the queue empty while the
+ * load goes on wait for it to queue more. Once the load is done the queue is
+ * drained: the workers stop when it is empty or when the time budget has run
+ * out, and as processing a redo record can queue others the queue is counted
+ * again before the phase ends.
+ */
+class RedoProcessor {
+
+	private static final long IDLE_WAIT_MILLIS = 1000;
+	private static final int MAX_CONSECUTIVE_FAILURES = 10;
+
+	private final G2LoaderHandler handler;
+	private final int threads;
+	private final List<Thread> workers = new ArrayList<>();
+	private LoadMetrics metrics;
+
+	private final AtomicLong processed = new AtomicLong(0);
+	private final AtomicLong failed = new AtomicLong(0);
+	private volatile boolean draining;
+	private volatile boolean stopped;
+	private volatile long deadline;
+	private volatile String stopReason;
+	private long startMillis;
+
+	/**
+	 * @param handler Handler the redo records are processed through
+	 * @param threads Number of threads processing redo records
+	 */
+	RedoProcessor(G2LoaderHandler handler, int threads) {
+		this.handler = handler;
+		this.threads = threads;
+	}
+
+	void setMetrics(LoadMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Starts the workers, which process redo records until they are stopped or
+	 * the queue is drained.
+	 */
+	void start() {
+		startMillis = System.currentTimeMillis();
+		startWorkers();
+	}
+
+	/**
+	 * Processes the redo records left until the queue is empty or the time budget
+	 * has run out.
+	 *
+	 * @param budgetMillis Time budget in milliseconds, 0 for none
+	 * @return Whether the queue was drained, false when the budget ran out first
+	 *
+	 * @throws Exception if the workers stopped on repeated engine failures
+	 */
+	boolean drain(long budgetMillis) throws Exception {
+		deadline = budgetMillis > 0 ? System.currentTimeMillis() + budgetMillis : 0;
+		draining = true;
+		wakeUp();
+		while (true) {
+			joinWorkers();
+			if (stopReason != null) {
+				throw new Exception("Redo processing stopped: " + stopReason);
+			}
+			if (isOverBudget()) {
+				return false;
+			}
+			// Redo records processed last may have queued new ones
+			if (handler.countRedoRecords() == 0) {
+				return true;
+			}
+			startWorkers();
+		}
+	}
+
+	/**
+	 * Stops the workers after the records they are processing.
+	 */
+	void stop() {
+		stopped = true;
+		wakeUp();
+		joinWorkers();
+	}
+
+	/**
+	 * @return Number of redo records processed
+	 */
+	long getProcessed() {
+		return processed.get();
+	}
+
+	/**
+	 * @return Number of redo records the engine failed on
+	 */
+	long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * @return Milliseconds since the workers were started
+	 */
+	long getElapsedMillis() {
+		return System.currentTimeMillis() - startMillis;
+	}
+
+	private void startWorkers() {
+		workers.clear();
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(this::work, "g2loader-redo-" + (i + 1));
+			workers.add(worker);
+			worker.start();
+		}
+	}
+
+	private void joinWorkers() {
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stopped = true;
+			}
+		}
+	}
+
+	private void work() {
+		int consecutiveFailures = 0;
+		while (!stopped && stopReason == null && !isOverBudget()) {
+			boolean found;
+			try {
+				found = handler.processRedoRecord();
+				consecutiveFailures = 0;
+			} catch (Exception e) {
+				failed.incrementAndGet();
+				System.err.println("FAILED: redo record [" + e.getMessage() + "]");
+				if (++consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+					stopReason = consecutiveFailures + " consecutive failures, last: " + e.getMessage();
+				}
+				continue;
+			}
+			if (found) {
+				processed.incrementAndGet();
+				if (metrics != null) {
+					metrics.recordRedo();
+				}
+			} else if (draining) {
+				return;
+			} else {
+				idle();
+			}
+		}
+	}
+
+	private synchronized void idle() {
+		try {
+			if (!draining && !stopped) {
+				wait(IDLE_WAIT_MILLIS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stopped = true;
+		}
+	}
+
+	private synchronized void wakeUp() {
+		notifyAll();
+	}
+
+	private boolean isOverBudget() {
+		long end = deadline;
+		return end > 0 && System.currentTimeMillis() >= end;
+	}
+}
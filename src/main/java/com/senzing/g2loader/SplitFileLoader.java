@@ -0,0 +1,166 @@
+package com.senzing.g2loader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Loads a JSON lines file by splitting it into byte ranges that start at line
+ * boundaries and reading every range on its own thread. The records of each
+ * range go to a shared {@link RecordLoader}: loaded directly by the range thread
+ * when it has a single thread, through its queue otherwise.
+ */
+class SplitFileLoader {
+
+	private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+	private final RecordLoader loader;
+	private final Path file;
+	private final int splits;
+	private final LoadStats stats;
+
+	/**
+	 * @param loader Loader the records are handed to
+	 * @param file   JSON lines file
+	 * @param splits Number of ranges read in parallel
+	 * @param stats  Counts of the file, or null
+	 */
+	SplitFileLoader(RecordLoader loader, Path file, int splits, LoadStats stats) {
+		this.loader = loader;
+		this.file = file;
+		this.splits = Math.max(1, splits);
+		this.stats = stats;
+	}
+
+	/**
+	 * Reads every range and hands its records to the loader. Line numbers are
+	 * reported for the whole file: every range first counts its lines, which only
+	 * scans for line breaks, so the ranges after it know where they start.
+	 *
+	 * @throws Exception if a range could not be read
+	 */
+	void load() throws Exception {
+		long[] bounds = splitPoints(file, splits);
+		int ranges = bounds.length - 1;
+
+		List<CompletableFuture<Long>> lineCounts = new ArrayList<>();
+		for (int i = 0; i < ranges; i++) {
+			lineCounts.add(new CompletableFuture<>());
+		}
+
+		List<Thread> readers = new ArrayList<>();
+		List<CompletableFuture<Void>> results = new ArrayList<>();
+		for (int i = 0; i < ranges; i++) {
+			final int range = i;
+			CompletableFuture<Void> result = new CompletableFuture<>();
+			Thread reader = new Thread(() -> {
+				try {
+					loadRange(range, bounds[range], bounds[range + 1], lineCounts);
+					result.complete(null);
+				} catch (Throwable e) {
+					// Let the later ranges stop waiting for this one
+					lineCounts.get(range).completeExceptionally(e);
+					result.completeExceptionally(e);
+				}
+			}, "g2loader-reader-" + (range + 1));
+			readers.add(reader);
+			results.add(result);
+			reader.start();
+		}
+
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		for (CompletableFuture<Void> result : results) {
+			try {
+				result.get();
+			} catch (ExecutionException e) {
+				throw new Exception("Failed to read " + file + ": " + e.getCause().getMessage(), e.getCause());
+			}
+		}
+	}
+
+	private void loadRange(int range, long start, long end, List<CompletableFuture<Long>> lineCounts)
+			throws Exception {
+		if (range < lineCounts.size() - 1) {
+			try (MappedLineReader counter = new MappedLineReader(file, start, end,
+					MappedLineReader.DEFAULT_WINDOW_SIZE)) {
+				lineCounts.get(range).complete(counter.countLines());
+			}
+		}
+
+		long lineNumber = 0;
+		for (int i = 0; i < range; i++) {
+			lineNumber += lineCounts.get(i).get();
+		}
+
+		try (MappedLineReader reader = new MappedLineReader(file, start, end, MappedLineReader.DEFAULT_WINDOW_SIZE)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				loader.submit(stats, ++lineNumber, reader.getPosition(), line);
+			}
+		}
+	}
+
+	/**
+	 * Splits a file into ranges of about the same size that start at the beginning
+	 * of a line.
+	 *
+	 * @param file   File to split
+	 * @param splits Number of ranges wanted
+	 * @return Range bounds: range i runs from bounds[i] to bounds[i + 1]. Fewer
+	 *         ranges than wanted are returned for files with few lines.
+	 *
+	 * @throws IOException
+	 */
+	static long[] splitPoints(Path file, int splits) throws IOException {
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(0L);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+			for (int i = 1; i < splits; i++) {
+				long target = Math.max(size / splits * i, bounds.get(bounds.size() - 1));
+				long bound = nextLineStart(channel, target, buffer);
+				if (bound >= size) {
+					break;
+				}
+				if (bound > bounds.get(bounds.size() - 1)) {
+					bounds.add(bound);
+				}
+			}
+			bounds.add(size);
+		}
+		return bounds.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/**
+	 * Returns the offset of the first line starting at or after a position.
+	 */
+	private static long nextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+		if (position == 0) {
+			return 0;
+		}
+		// A line starts at the position when the byte before it is a line break
+		long offset = position - 1;
+		while (true) {
+			buffer.clear();
+			int read = channel.read(buffer, offset);
+			if (read <= 0) {
+				return channel.size();
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return offset + i + 1;
+				}
+			}
+			offset += read;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.senzing.g2loader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads UTF-8 lines from a stream, e.g. a decompressed file. Line breaks are
+ * found in the raw bytes and only the returned lines are decoded. Lines end
+ * with "\n" or "\r\n", a leading byte order mark is skipped.
+ */
+class StreamLineReader implements LineReader {
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private final InputStream input;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int start = 0;
+	private int limit = 0;
+	private boolean endOfInput = false;
+	private long position;
+
+	/**
+	 * Reads a stream from its start.
+	 *
+	 * @param input Stream to read
+	 *
+	 * @throws IOException
+	 */
+	StreamLineReader(InputStream input) throws IOException {
+		this(input, 0);
+	}
+
+	/**
+	 * Reads a stream from a position, skipping the bytes before it.
+	 *
+	 * @param input    Stream to read
+	 * @param position Byte offset of the first line to read
+	 *
+	 * @throws IOException
+	 */
+	StreamLineReader(InputStream input, long position) throws IOException {
+		this.input = input;
+		if (position == 0) {
+			skipByteOrderMark();
+		} else {
+			skipFully(position);
+		}
+		this.position = position == 0 ? start : position;
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		int scanned = 0;
+		while (true) {
+			for (int i = start + scanned; i < limit; i++) {
+				if (buffer[i] == '\n') {
+					return takeLine(i, i + 1);
+				}
+			}
+			scanned = limit - start;
+			if (!fill()) {
+				return start < limit ? takeLine(limit, limit) : null;
+			}
+		}
+	}
+
+	@Override
+	public long getPosition() {
+		return position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+
+	private String takeLine(int lineEnd, int next) {
+		int end = lineEnd > start && buffer[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+		String line = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+		position += next - start;
+		start = next;
+		return line;
+	}
+
+	/**
+	 * Reads more of the stream, moving the unread bytes to the front of the buffer
+	 * and growing it when a line fills the whole buffer.
+	 *
+	 * @return false at the end of the stream
+	 */
+	private boolean fill() throws IOException {
+		if (endOfInput) {
+			return false;
+		}
+		if (start > 0) {
+			System.arraycopy(buffer, start, buffer, 0, limit - start);
+			limit -= start;
+			start = 0;
+		} else if (limit == buffer.length) {
+			byte[] larger = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, larger, 0, limit);
+			buffer = larger;
+		}
+		int read = input.read(buffer, limit, buffer.length - limit);
+		if (read < 0) {
+			endOfInput = true;
+			return false;
+		}
+		limit += read;
+		return true;
+	}
+
+	private void skipByteOrderMark() throws IOException {
+		while (limit < 3 && fill()) {
+		}
+		if (limit >= 3 && (buffer[0] & 0xff) == 0xef && (buffer[1] & 0xff) == 0xbb && (buffer[2] & 0xff) == 0xbf) {
+			start = 3;
+		}
+	}
+
+	private void skipFully(long bytes) throws IOException {
+		long remaining = bytes;
+		while (remaining > 0) {
+			long skipped = input.skip(remaining);
+			if (skipped <= 0) {
+				if (input.read() < 0) {
+					throw new EOFException("Input ends before byte " + bytes);
+				}
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+	}
+}
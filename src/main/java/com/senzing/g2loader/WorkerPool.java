@@ -0,0 +1,267 @@
+package com.senzing.g2loader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+/**
+ * Loads records through worker processes, each a G2Loader loading the JSON lines
+ * written to its standard input with its own engine, so a large machine is used
+ * beyond what the engine scales to in a single process.
+ * <p>
+ * The pool takes the place of the handler of the load: records are read, counted
+ * and checked by the coordinator as usual, then written to the worker picked by
+ * the hash of their keys, so all the versions of a record go to the same worker
+ * in order. Every worker reports its metrics to its own file, from which the
+ * counts of the workers are added up once they have loaded their records.
+ */
+class WorkerPool extends G2LoaderHandler {
+
+	/**
+	 * System property naming the {@link G2LoaderHandler} class the loader
+	 * creates, passed on to the workers, e.g. a stub handler to exercise the pool
+	 * without a repository.
+	 */
+	static final String HANDLER_PROPERTY = "g2loader.handler";
+	/**
+	 * Prefix of the system properties passed on to the workers, e.g. those
+	 * configuring a stub handler.
+	 */
+	static final String PROPERTY_PREFIX = "g2loader.";
+
+	private static final String LIBRARY_PATH_PROPERTY = "java.library.path";
+	private static final int PIPE_BUFFER_SIZE = 256 * 1024;
+
+	private final int size;
+	private final List<String> arguments;
+	private final Path metricsFile;
+	private final Path deadLetterFile;
+	private final List<Worker> workers = new ArrayList<>();
+	private AffinityKey affinityKey;
+	private volatile FatalLoadException failure;
+
+	/**
+	 * @param size           Number of workers
+	 * @param arguments      Command line arguments of the workers, without
+	 *                       -dataFile, -metricsFile and -deadLetterFile
+	 * @param metricsFile    Metrics file of the load, the workers write theirs
+	 *                       next to it, or null to write them to temporary files
+	 * @param deadLetterFile Dead-letter file of the load, the workers write theirs
+	 *                       next to it, or null
+	 */
+	WorkerPool(int size, List<String> arguments, Path metricsFile, Path deadLetterFile) {
+		this.size = size;
+		this.arguments = arguments;
+		this.metricsFile = metricsFile;
+		this.deadLetterFile = deadLetterFile;
+	}
+
+	/**
+	 * Sends the records sharing the key to the same worker, which loads them in
+	 * order with the same key.
+	 * 
+	 * @param affinityKey Key records are scheduled by, or null
+	 */
+	void setAffinityKey(AffinityKey affinityKey) {
+		this.affinityKey = affinityKey;
+	}
+
+	/**
+	 * Starts the worker processes.
+	 *
+	 * @throws IOException
+	 */
+	void start() throws IOException {
+		for (int i = 0; i < size; i++) {
+			int number = i + 1;
+			Path workerMetrics = metricsFile != null
+					? EntityExporter.siblingFile(metricsFile, "worker-" + number, null)
+					: Files.createTempFile("g2loader-worker-" + number + "-", ".jsonl");
+
+			List<String> command = new ArrayList<>();
+			command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+			for (String property : System.getProperties().stringPropertyNames()) {
+				if (property.startsWith(PROPERTY_PREFIX) || property.equals(LIBRARY_PATH_PROPERTY)) {
+					command.add("-D" + property + "=" + System.getProperty(property));
+				}
+			}
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(G2Loader.class.getName());
+			command.addAll(arguments);
+			command.add("-dataFile");
+			command.add("-");
+			command.add("-metricsFile");
+			command.add(workerMetrics.toString());
+			if (deadLetterFile != null) {
+				command.add("-deadLetterFile");
+				command.add(EntityExporter.siblingFile(deadLetterFile, "worker-" + number, null).toString());
+			}
+
+			Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+			Worker worker = new Worker(number, process, workerMetrics);
+			workers.add(worker);
+			worker.output.start();
+		}
+	}
+
+	@Override
+	protected void addRecord(String dataSource, String recordID, String record) throws Exception {
+		if (recordID == null)
+			throw new Exception("RECORD_ID not populated in JSON record");
+		if (dataSource == null)
+			throw new Exception("DATA_SOURCE not populated in JSON record");
+
+		long hash = RecordDeduplicator.hash(dataSource, recordID);
+		if (affinityKey != null && !affinityKey.isRecordKeys()) {
+			String key = affinityKey.fromAttributes(record);
+			if (key != null) {
+				hash = AffinityKey.hash(key);
+			}
+		}
+		Worker worker = workers.get((int) Math.floorMod(hash, (long) size));
+		if (failure != null) {
+			throw failure;
+		}
+		synchronized (worker) {
+			try {
+				worker.input.write(record);
+				worker.input.newLine();
+			} catch (IOException e) {
+				// The records of the stopped worker cannot be loaded, so the load stops
+				failure = new FatalLoadException("Worker " + worker.number + " stopped: " + e.getMessage());
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Ends the input of the workers, waits for them to load the rest of their
+	 * records and reports their counts.
+	 *
+	 * @throws Exception if a worker failed
+	 */
+	void finish() throws Exception {
+		List<String> failures = new ArrayList<>();
+		for (Worker worker : workers) {
+			synchronized (worker) {
+				try {
+					worker.input.close();
+				} catch (IOException e) {
+					// Reported by its exit code
+				}
+			}
+		}
+		long records = 0;
+		long failed = 0;
+		double seconds = 0;
+		for (Worker worker : workers) {
+			int exitCode = worker.process.waitFor();
+			worker.output.join();
+			JsonObject summary = readSummary(worker.metricsFile);
+			if (exitCode != 0) {
+				failures.add("worker " + worker.number + " exited with " + exitCode);
+			}
+			if (summary == null) {
+				System.out.println("Worker " + worker.number + ": no metrics");
+				continue;
+			}
+			long workerRecords = summary.getJsonNumber("totalRecords").longValue();
+			long workerFailed = summary.getJsonNumber("totalFailures").longValue();
+			double workerSeconds = summary.getJsonNumber("elapsedSeconds").doubleValue();
+			System.out.println("Worker " + worker.number + ": loaded " + workerRecords + " records with "
+					+ workerFailed + " failures, " + Math.round(workerSeconds > 0 ? workerRecords / workerSeconds : 0)
+					+ " per second");
+			records += workerRecords;
+			failed += workerFailed;
+			seconds = Math.max(seconds, workerSeconds);
+		}
+		String msg = "Workers loaded " + records + " records with " + failed + " failures, "
+				+ Math.round(seconds > 0 ? records / seconds : 0) + " per second";
+		System.out.println(msg);
+		if (failed > 0) {
+			throw new Exception(msg);
+		}
+		if (!failures.isEmpty()) {
+			throw new Exception("Load through workers failed: " + String.join(", ", failures));
+		}
+	}
+
+	/**
+	 * Stops the workers still running, e.g. after the coordinator failed, and
+	 * removes the temporary metrics files.
+	 */
+	void stop() {
+		for (Worker worker : workers) {
+			if (worker.process.isAlive()) {
+				worker.process.destroy();
+			}
+			if (metricsFile == null) {
+				try {
+					Files.deleteIfExists(worker.metricsFile);
+				} catch (IOException e) {
+					// Left in the temporary directory
+				}
+			}
+		}
+	}
+
+	private static JsonObject readSummary(Path file) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		JsonObject summary = null;
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			try (JsonReader reader = Json.createReader(new StringReader(line))) {
+				JsonObject metrics = reader.readObject();
+				if ("summary".equals(metrics.getString("type", null))) {
+					summary = metrics;
+				}
+			}
+		}
+		return summary;
+	}
+
+	private static class Worker {
+		final int number;
+		final Process process;
+		final Path metricsFile;
+		final BufferedWriter input;
+		final Thread output;
+
+		Worker(int number, Process process, Path metricsFile) {
+			this.number = number;
+			this.process = process;
+			this.metricsFile = metricsFile;
+			this.input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8),
+					PIPE_BUFFER_SIZE);
+			this.output = new Thread(() -> copyOutput(number, process), "g2loader-worker-output-" + number);
+		}
+
+		private static void copyOutput(int number, Process process) {
+			try (Reader reader = new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8);
+					BufferedReader lines = new BufferedReader(reader)) {
+				String line;
+				while ((line = lines.readLine()) != null) {
+					System.out.println("[worker " + number + "] " + line);
+				}
+			} catch (IOException e) {
+				// The worker is gone
+			}
+		}
+	}
+}
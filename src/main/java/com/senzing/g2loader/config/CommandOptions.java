@@ -2,6 +2,8 @@ package com.senzing.g2loader.config;
 
 public class CommandOptions {
 	public static final String INI_FILE = "iniFile";
+	public static final String CONFIG_CACHE = "configCache";
+	public static final String NO_CONFIG_CACHE = "noConfigCache";
 	public static final String JDBC_CONNECTION = "jdbcConnection";
 	public static final String DATA_FILE = "dataFile";
 	public static final String EXPORT_FILE = "exportToFile";
@@ -9,5 +11,36 @@ public class CommandOptions {
 	public static final String DATA_SOURCE = "dataSource";
 	public static final String PURGE = "purge";
 	public static final String VERBOSE = "debug";
+	public static final String THREADS = "threads";
+	public static final String ADAPTIVE = "adaptive";
+	public static final String SPLITS = "splits";
+	public static final String CHECKPOINT_FILE = "checkpointFile";
+	public static final String RESUME = "resume";
+	public static final String CHECKPOINT_INTERVAL = "checkpointInterval";
+	public static final String CHECKPOINT_RECORDS = "checkpointRecords";
+	public static final String METRICS_FILE = "metricsFile";
+	public static final String METRICS_INTERVAL = "metricsInterval";
+	public static final String DEAD_LETTER_FILE = "deadLetterFile";
+	public static final String MAX_FAILURES = "maxFailures";
+	public static final String RETRIES = "retries";
+	public static final String RETRY_ERROR_CODES = "retryErrorCodes";
+	public static final String RETRY_FAILED = "retryFailed";
+	public static final String EXPORT_SHARD_SIZE = "exportShardSize";
+	public static final String EXPORT_THREADS = "exportThreads";
+	public static final String SCAN_DATA_SOURCES = "scanDataSources";
+	public static final String DEDUP = "dedup";
+	public static final String DELTA_INDEX = "deltaIndex";
+	public static final String DELTA_DELETES = "deltaDeletes";
+	public static final String PROCESS_REDO = "processRedo";
+	public static final String REDO_THREADS = "redoThreads";
+	public static final String REDO_SECONDS = "redoSeconds";
+	public static final String REDO_DURING_LOAD = "redoDuringLoad";
+	public static final String AFFECTED_ENTITIES_FILE = "affectedEntitiesFile";
+	public static final String DELTA_EXPORT_FILE = "deltaExportFile";
+	public static final String WORKERS = "workers";
+	public static final String AFFINITY = "affinity";
+	public static final String AFFINITY_KEY = "affinityKey";
+	public static final String SERVE = "serve";
+	public static final String SERVE_QUEUE_SIZE = "serveQueueSize";
 
 }